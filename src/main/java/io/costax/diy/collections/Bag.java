@@ -1,11 +1,24 @@
 package io.costax.diy.collections;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Bag (MultiSet): apples=5, bananas=4, oranges=6
@@ -15,13 +28,55 @@ import java.util.function.Consumer;
  * Similar to a List where duplicates are allowed.
  * Similar to Set where elements that are retained are unique, the data structure is hashed.
  * Similar to Map where the element to the count is available.
+ * <p>
+ * The counts are kept in an object-to-int open addressing table (linear probing over the parallel
+ * arrays {@code keys} and {@code counts}) instead of a {@code HashMap<T, Integer>}, so adding, reading and
+ * removing occurrences of an element that is already in the bag do not allocate (Item 6: avoid creating
+ * unnecessary objects, prefer primitives to boxed primitives).
+ * <p>
+ * Next to the table, a frequency index groups the occupied slots in buckets of equal count, like an LFU cache:
+ * the buckets form a doubly linked list sorted by count, and the slots of each bucket form a doubly linked list of
+ * their own. The links are {@code int} arrays indexed by slot and by bucket, so there are no node objects.
+ * Adding or removing a single occurrence moves the slot to a neighbouring bucket and deleting an element unlinks its
+ * slot, both O(1); a larger change of count only walks the buckets between the old and the new count.
+ * {@link #topOccurrences(int)} and {@link #bottomOccurrences(int)} read the k first slots from either end of the
+ * bucket list, in O(k), instead of copying and sorting every entry. The index is built, in O(n log n), by the first
+ * of these calls and kept up to date from then on, so a bag that never ranks its elements only holds the table.
+ * <p>
+ * The serialized form is the compact {@link CollectionsCodec} snapshot, written by a serialization proxy.
  *
  * @see <a href="https://www.eclipse.org/collections/">Eclipse Collections</a>
  * @see <a href="https://github.com/eclipse/eclipse-collections">eclipse collections github</a>
  */
-public class Bag<T> {
+public class Bag<T> implements Serializable {
+
+    private static final long serialVersionUID = 5221446025223702190L;
 
-    private final Map<T, Integer> backingMap = new HashMap<>();
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * A null slot means an empty slot, so a null element is stored as this sentinel.
+     */
+    private static final Object NULL_ELEMENT = new Object();
+
+    private Object[] keys;
+    private int[] counts;
+
+    /**
+     * The frequency index, null until {@link #ensureIndex()} builds it.
+     */
+    private int[] bucketOf;
+    private int[] nextInBucket;
+    private int[] previousInBucket;
+    private int[] bucketCount;
+    private int[] bucketHead;
+    private int[] higher;
+    private int[] lower;
+    private int highest;
+    private int lowest;
+    private int freeBucket;
+    private int bucketsUsed;
+    private int sizeDistinct = 0;
     private int size = 0;
 
     @SafeVarargs
@@ -30,26 +85,50 @@ public class Bag<T> {
     }
 
     private Bag(List<T> elements) {
-        for (final T element : elements) {
+        // the number of elements says nothing of the number of distinct ones, the table grows as they come
+        this(DEFAULT_INITIAL_CAPACITY, elements);
+    }
 
-            /*
-            Integer existing = this.backingMap.get(element);
-            if (existing != null) {
-                existing++;
-            } else {
-                existing = 1;
-            }
-            this.backingMap.put(element, existing);
-            this.size = this.size() + 1;
-            */
+    private Bag(final int capacity, final List<T> elements) {
+        this.allocate(capacity);
+        this.size += this.incrementRuns(elements);
+    }
 
-            this.backingMap.merge(element, 1, Integer::sum);
-            this.size = this.size() + 1;
+    /**
+     * @param expectedDistinct the number of distinct elements the bag holds before its table grows. A small bag,
+     * such as the values of a key in {@link BagMultimap}, starts with a table of 2 slots instead of 16.
+     */
+    public static <T> Bag<T> withExpectedDistinct(final int expectedDistinct) {
+        if (expectedDistinct < 0 || expectedDistinct > 1 << 29) {
+            throw new IllegalArgumentException("The expected number of distinct elements must be between 0 and 2^29: "
+                    + expectedDistinct);
         }
+        return new Bag<>(tableSizeFor(expectedDistinct, 2), List.of());
+    }
+
+    /**
+     * Collects the elements of a stream into a {@link Bag}. Each thread of a parallel stream counts into its own
+     * partial bag, and the smaller partial bag is merged into the larger one with {@link #addAll(Bag)}, so the
+     * threads never share a table.
+     */
+    public static <T> Collector<T, ?, Bag<T>> toBag() {
+        return Collector.of(
+                Bag::new,
+                Bag::addOccurrence,
+                (left, right) -> {
+                    if (left.sizeDistinct < right.sizeDistinct) {
+                        right.addAll(left);
+                        return right;
+                    }
+                    left.addAll(right);
+                    return left;
+                },
+                Collector.Characteristics.UNORDERED);
     }
 
     public int getOccurrences(final T element) {
-        return this.backingMap.getOrDefault(element, 0);
+        final int slot = this.slotOf(maskNull(element));
+        return slot < 0 ? 0 : this.counts[slot];
     }
 
     public int size() {
@@ -57,48 +136,912 @@ public class Bag<T> {
     }
 
     public int sizeDistinct() {
-        return this.backingMap.keySet().size();
+        return this.sizeDistinct;
     }
 
+    /**
+     * @return the occurrences of the element, after the addition.
+     * @throws IllegalArgumentException if {@code occurrences} is negative. The {@code HashMap} backed bag accepted
+     * it and could keep elements with a zero or negative count; a negative addition is now rejected, like in
+     * {@link ConcurrentBag}, and occurrences are taken away with {@link #removeOccurrences(Object, int)}.
+     */
     public int addOccurrences(final T element, final int occurrences) {
+        if (occurrences < 0) {
+            throw new IllegalArgumentException("Cannot add a negative number of occurrences: " + occurrences);
+        }
+
+        final int count = this.increment(maskNull(element), occurrences);
         this.size += occurrences;
-        return this.backingMap.merge(element, occurrences, Integer::sum);
+        return count;
     }
 
     public int addOccurrence(final T element) {
         return this.addOccurrences(element, 1);
     }
 
+    /**
+     * Adds all the elements, a run of equal adjacent elements is added with a single lookup.
+     * A sorted or pre-grouped input therefore costs one lookup per distinct element.
+     * <p>
+     * The elements are read in a single pass, and the table grows by doubling as distinct elements come: an upfront
+     * estimate would need a second pass, and the runs overestimate the distinct elements of an unsorted input.
+     */
+    public void addAll(final Iterable<? extends T> elements) {
+        this.size += this.incrementRuns(elements);
+    }
+
+    /**
+     * @see #addAll(Iterable)
+     */
+    @SafeVarargs
+    public final void addAll(final T... elements) {
+        this.addAll(Arrays.asList(elements));
+    }
+
+    /**
+     * Merges the occurrences of the other bag into this one.
+     */
+    public void addAll(final Bag<? extends T> other) {
+        this.ensureCapacity(this.sizeDistinct + other.sizeDistinct);
+        final Object[] otherKeys = other.keys;
+        final int[] otherCounts = other.counts;
+        final int otherSize = other.size;
+        for (int slot = 0; slot < otherKeys.length; slot++) {
+            if (otherKeys[slot] != null) {
+                this.increment(otherKeys[slot], otherCounts[slot]);
+            }
+        }
+        this.size += otherSize;
+    }
+
     public boolean removeOccurrence(final T element) {
         return removeOccurrences(element, 1);
     }
 
     public boolean removeOccurrences(final T element, final int occurrences) {
-        Integer existing = this.backingMap.get(element);
-        if (existing != null) {
+        final int removed = this.decrement(maskNull(element), occurrences);
+        if (removed < 0) {
+            return false;
+        }
+        this.size -= removed;
+        return true;
+    }
 
-            if (existing <= occurrences) {
-                this.backingMap.remove(element);
-                this.size -= existing;
-            } else {
-                this.backingMap.put(element, existing - occurrences);
-                this.size -= occurrences;
+    /**
+     * Removes all the elements. The table keeps its capacity, so a bag that is filled again to a similar number of
+     * distinct elements, like the slices of a {@link WindowedBag}, does not allocate.
+     */
+    public void clear() {
+        Arrays.fill(this.keys, null);
+        Arrays.fill(this.counts, 0);
+        if (this.bucketOf != null) {
+            Arrays.fill(this.bucketOf, 0);
+            Arrays.fill(this.nextInBucket, 0);
+            Arrays.fill(this.previousInBucket, 0);
+            Arrays.fill(this.bucketCount, 0);
+            Arrays.fill(this.bucketHead, 0);
+            Arrays.fill(this.higher, 0);
+            Arrays.fill(this.lower, 0);
+            this.highest = -1;
+            this.lowest = -1;
+            this.freeBucket = -1;
+            this.bucketsUsed = 0;
+        }
+        this.sizeDistinct = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Difference: removes the occurrences of the other bag from this one, the counts do not go below zero.
+     */
+    public void removeAll(final Bag<?> other) {
+        if (other == this) {
+            this.clear();
+            return;
+        }
+
+        final Object[] otherKeys = other.keys;
+        final int[] otherCounts = other.counts;
+        int removed = 0;
+        for (int slot = 0; slot < otherKeys.length; slot++) {
+            if (otherKeys[slot] != null) {
+                removed += Math.max(0, this.decrement(otherKeys[slot], otherCounts[slot]));
             }
+        }
+        this.size -= removed;
+    }
 
-            return true;
+    /**
+     * @return the k elements with the most occurrences, most frequent first; ties are broken arbitrarily.
+     */
+    public List<Map.Entry<T, Integer>> topOccurrences(final int k) {
+        this.ensureIndex();
+        final int n = Math.min(Math.max(k, 0), this.sizeDistinct);
+        final List<Map.Entry<T, Integer>> top = new ArrayList<>(n);
+        for (int bucket = this.highest; top.size() < n; bucket = this.lower[bucket]) {
+            for (int slot = this.bucketHead[bucket]; slot >= 0 && top.size() < n; slot = this.nextInBucket[slot]) {
+                top.add(this.entryAt(slot));
+            }
         }
-        return false;
+        return top;
+    }
+
+    /**
+     * @return the k elements with the fewest occurrences, least frequent first; ties are broken arbitrarily.
+     */
+    public List<Map.Entry<T, Integer>> bottomOccurrences(final int k) {
+        this.ensureIndex();
+        final int n = Math.min(Math.max(k, 0), this.sizeDistinct);
+        final List<Map.Entry<T, Integer>> bottom = new ArrayList<>(n);
+        for (int bucket = this.lowest; bottom.size() < n; bucket = this.higher[bucket]) {
+            for (int slot = this.bucketHead[bucket]; slot >= 0 && bottom.size() < n; slot = this.nextInBucket[slot]) {
+                bottom.add(this.entryAt(slot));
+            }
+        }
+        return bottom;
     }
 
     public void forEachWithOccurrences(BiConsumer<T, Integer> biConsumer) {
-        this.backingMap.forEach(biConsumer);
+        final Object[] keys = this.keys;
+        final int[] counts = this.counts;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                biConsumer.accept(unmaskNull(keys[slot]), counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #forEachWithOccurrences(BiConsumer)} with a primitive count, so nothing is boxed.
+     * <p>
+     * It is not an overload of {@code forEachWithOccurrences}: an implicitly typed lambda such as
+     * {@code (each, occurrences) -> ...} would be ambiguous between the two functional interfaces.
+     */
+    public void forEachWithIntOccurrences(ObjIntConsumer<? super T> consumer) {
+        final Object[] keys = this.keys;
+        final int[] counts = this.counts;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                consumer.accept(unmaskNull(keys[slot]), counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * External iteration over the distinct elements and their counts, without a callback per element and
+     * without boxing:
+     * <pre>
+     * Bag.Cursor&lt;String&gt; cursor = bag.cursor();
+     * while (cursor.advance()) {
+     *     total += cursor.count();
+     * }
+     * </pre>
+     * The cursor reads the table directly, so the bag must not be modified while it is in use.
+     */
+    public Cursor<T> cursor() {
+        return new Cursor<>(this.keys, this.counts);
     }
 
     public void forEach(Consumer<T> consumer) {
-        this.backingMap.forEach((element, count) -> {
-            for (int i = 0; i < count; i++) {
-                consumer.accept(element);
+        final Object[] keys = this.keys;
+        final int[] counts = this.counts;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                final T element = unmaskNull(keys[slot]);
+                for (int i = 0; i < counts[slot]; i++) {
+                    consumer.accept(element);
+                }
             }
-        });
+        }
+    }
+
+    /**
+     * Every element repeated by its count. The stream is backed by the table, so the bag must not be modified
+     * while the stream is consumed.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(new OccurrencesSpliterator<>(this.keys, this.counts, 0, this.keys.length,
+                this.size), false);
+    }
+
+    /**
+     * Every distinct element once.
+     *
+     * @see #stream()
+     */
+    public Stream<T> distinctStream() {
+        return StreamSupport.stream(new DistinctSpliterator<>(this.keys, this.counts, 0, this.keys.length,
+                this.sizeDistinct), false);
+    }
+
+    /**
+     * Every distinct element with its count.
+     *
+     * @see #stream()
+     */
+    public Stream<Map.Entry<T, Integer>> entryStream() {
+        return StreamSupport.stream(new EntrySpliterator<>(this.keys, this.counts, 0, this.keys.length,
+                this.sizeDistinct), false);
+    }
+
+    /**
+     * Cursor over the slots of the table, see {@link #cursor()}.
+     */
+    public static final class Cursor<T> {
+        private final Object[] keys;
+        private final int[] counts;
+        private int slot = -1;
+
+        private Cursor(final Object[] keys, final int[] counts) {
+            this.keys = keys;
+            this.counts = counts;
+        }
+
+        /**
+         * Moves to the next distinct element.
+         *
+         * @return false when there are no more elements.
+         */
+        public boolean advance() {
+            final Object[] keys = this.keys;
+            int slot = this.slot;
+            while (++slot < keys.length) {
+                if (keys[slot] != null) {
+                    this.slot = slot;
+                    return true;
+                }
+            }
+            this.slot = keys.length;
+            return false;
+        }
+
+        public T key() {
+            return unmaskNull(this.keys[this.current()]);
+        }
+
+        public int count() {
+            return this.counts[this.current()];
+        }
+
+        private int current() {
+            if (this.slot < 0 || this.slot >= this.keys.length) {
+                throw new IllegalStateException("The cursor is not on an element");
+            }
+            return this.slot;
+        }
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy<>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /**
+     * Item 90: the proxy writes the flat {@link CollectionsCodec} records instead of the table arrays, and
+     * rebuilds the bag "the regular way" through its public API.
+     */
+    private static class SerializationProxy<T> implements Serializable {
+        private static final long serialVersionUID = 4230887634522963711L;
+
+        private transient Bag<T> bag;
+
+        SerializationProxy(final Bag<T> bag) {
+            this.bag = bag;
+        }
+
+        private void writeObject(ObjectOutputStream stream) throws IOException {
+            stream.defaultWriteObject();
+            CollectionsCodec.encodeBag(this.bag, stream);
+        }
+
+        private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+            stream.defaultReadObject();
+            this.bag = CollectionsCodec.decodeBag(stream);
+        }
+
+        private Object readResolve() {
+            return this.bag;
+        }
+    }
+
+    /**
+     * Adds the occurrences to the count of the (masked) key, without touching {@code size}.
+     *
+     * @return the new count.
+     */
+    private int increment(final Object key, final int occurrences) {
+        int mask = this.keys.length - 1;
+        int slot = indexFor(key, mask);
+        Object existing;
+        while ((existing = this.keys[slot]) != null) {
+            if (existing.equals(key)) {
+                this.counts[slot] += occurrences;
+                if (this.bucketOf != null) {
+                    this.moveTo(slot, this.counts[slot]);
+                }
+                return this.counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (occurrences == 0) {
+            return 0;
+        }
+
+        if (this.sizeDistinct >= this.keys.length >> 1) {
+            this.rehash(this.keys.length << 1);
+            mask = this.keys.length - 1;
+            slot = indexFor(key, mask);
+            while (this.keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        this.keys[slot] = key;
+        this.counts[slot] = occurrences;
+        if (this.bucketOf != null) {
+            this.bucketOf[slot] = -1;
+            this.moveTo(slot, occurrences);
+        }
+        this.sizeDistinct++;
+        return occurrences;
+    }
+
+    /**
+     * Removes up to the given occurrences from the count of the (masked) key, without touching {@code size}.
+     *
+     * @return the number of occurrences actually removed, or -1 if the key is not in the bag.
+     */
+    private int decrement(final Object key, final int occurrences) {
+        final int slot = this.slotOf(key);
+        if (slot < 0) {
+            return -1;
+        }
+
+        final int existing = this.counts[slot];
+        if (existing <= occurrences) {
+            this.delete(slot);
+            return existing;
+        }
+        this.counts[slot] = existing - occurrences;
+        if (this.bucketOf != null) {
+            this.moveTo(slot, this.counts[slot]);
+        }
+        return occurrences;
+    }
+
+    /**
+     * @return the total number of occurrences added.
+     */
+    private int incrementRuns(final Iterable<? extends T> elements) {
+        final Iterator<? extends T> iterator = elements.iterator();
+        if (!iterator.hasNext()) {
+            return 0;
+        }
+
+        int added = 0;
+        T current = iterator.next();
+        int run = 1;
+        while (iterator.hasNext()) {
+            final T next = iterator.next();
+            if (Objects.equals(current, next)) {
+                run++;
+            } else {
+                this.increment(maskNull(current), run);
+                added += run;
+                current = next;
+                run = 1;
+            }
+        }
+        this.increment(maskNull(current), run);
+        return added + run;
+    }
+
+    private void ensureCapacity(final int expectedDistinct) {
+        if (expectedDistinct > this.keys.length >> 1) {
+            this.rehash(tableSizeFor(expectedDistinct, DEFAULT_INITIAL_CAPACITY));
+        }
+    }
+
+    /**
+     * Builds the frequency index the first time it is needed. The slots are linked in increasing order of count,
+     * so each one joins the bucket list at its highest end.
+     */
+    private void ensureIndex() {
+        if (this.bucketOf != null) {
+            return;
+        }
+        this.allocateIndex(this.keys.length);
+
+        final long[] byCount = new long[this.sizeDistinct];
+        int n = 0;
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != null) {
+                byCount[n++] = (long) this.counts[slot] << 32 | slot;
+            }
+        }
+        Arrays.sort(byCount);
+        for (final long entry : byCount) {
+            final int slot = (int) entry;
+            this.bucketOf[slot] = -1;
+            this.moveTo(slot, (int) (entry >>> 32));
+        }
+    }
+
+    private int slotOf(final Object key) {
+        final int mask = this.keys.length - 1;
+        int slot = indexFor(key, mask);
+        Object existing;
+        while ((existing = this.keys[slot]) != null) {
+            if (existing.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private Map.Entry<T, Integer> entryAt(final int slot) {
+        return new AbstractMap.SimpleImmutableEntry<>(unmaskNull(this.keys[slot]), this.counts[slot]);
+    }
+
+    /**
+     * Moves the slot to the bucket of the given count, inserting the bucket if there is none. The search starts
+     * from the bucket the slot leaves, so a change of one occurrence only looks at the neighbouring bucket; a new
+     * slot is searched from the end of the list whose count is closer.
+     */
+    private void moveTo(final int slot, final int count) {
+        final int from = this.bucketOf[slot];
+        final boolean up;
+        if (from >= 0) {
+            if (count == this.bucketCount[from]) {
+                return;
+            }
+            up = count > this.bucketCount[from];
+        } else {
+            up = this.highest < 0
+                    || count - this.bucketCount[this.lowest] <= this.bucketCount[this.highest] - count;
+        }
+
+        int below;
+        int above;
+        if (up) {
+            below = from;
+            above = from < 0 ? this.lowest : this.higher[from];
+            while (above >= 0 && this.bucketCount[above] < count) {
+                below = above;
+                above = this.higher[above];
+            }
+        } else {
+            above = from;
+            below = from < 0 ? this.highest : this.lower[from];
+            while (below >= 0 && this.bucketCount[below] > count) {
+                above = below;
+                below = this.lower[below];
+            }
+        }
+
+        final int target;
+        if (above >= 0 && this.bucketCount[above] == count) {
+            target = above;
+        } else if (below >= 0 && this.bucketCount[below] == count) {
+            target = below;
+        } else {
+            target = this.insertBucket(count, below, above);
+        }
+        if (from >= 0) {
+            this.unlink(slot);
+        }
+
+        final int head = this.bucketHead[target];
+        this.bucketOf[slot] = target;
+        this.previousInBucket[slot] = -1;
+        this.nextInBucket[slot] = head;
+        if (head >= 0) {
+            this.previousInBucket[head] = slot;
+        }
+        this.bucketHead[target] = slot;
+    }
+
+    /**
+     * @return a bucket of the given count linked between the buckets {@code below} and {@code above} (-1 for the
+     * ends of the list).
+     */
+    private int insertBucket(final int count, final int below, final int above) {
+        final int bucket;
+        if (this.freeBucket >= 0) {
+            bucket = this.freeBucket;
+            this.freeBucket = this.higher[bucket];
+        } else {
+            bucket = this.bucketsUsed++;
+        }
+        this.bucketCount[bucket] = count;
+        this.bucketHead[bucket] = -1;
+        this.lower[bucket] = below;
+        this.higher[bucket] = above;
+        if (below >= 0) {
+            this.higher[below] = bucket;
+        } else {
+            this.lowest = bucket;
+        }
+        if (above >= 0) {
+            this.lower[above] = bucket;
+        } else {
+            this.highest = bucket;
+        }
+        return bucket;
+    }
+
+    /**
+     * Removes the slot from its bucket, and the bucket from the list once it is empty.
+     */
+    private void unlink(final int slot) {
+        final int bucket = this.bucketOf[slot];
+        final int previous = this.previousInBucket[slot];
+        final int next = this.nextInBucket[slot];
+        if (previous >= 0) {
+            this.nextInBucket[previous] = next;
+        } else {
+            this.bucketHead[bucket] = next;
+        }
+        if (next >= 0) {
+            this.previousInBucket[next] = previous;
+        }
+        if (this.bucketHead[bucket] >= 0) {
+            return;
+        }
+
+        if (this.lower[bucket] >= 0) {
+            this.higher[this.lower[bucket]] = this.higher[bucket];
+        } else {
+            this.lowest = this.higher[bucket];
+        }
+        if (this.higher[bucket] >= 0) {
+            this.lower[this.higher[bucket]] = this.lower[bucket];
+        } else {
+            this.highest = this.lower[bucket];
+        }
+        // the free buckets are chained through higher
+        this.higher[bucket] = this.freeBucket;
+        this.freeBucket = bucket;
+    }
+
+    /**
+     * Gives the links of the slot {@code from} to the slot {@code to}, when the backward shift deletion moves an
+     * entry.
+     */
+    private void relink(final int from, final int to) {
+        final int bucket = this.bucketOf[from];
+        final int previous = this.previousInBucket[from];
+        final int next = this.nextInBucket[from];
+        this.bucketOf[to] = bucket;
+        this.previousInBucket[to] = previous;
+        this.nextInBucket[to] = next;
+        if (previous >= 0) {
+            this.nextInBucket[previous] = to;
+        } else {
+            this.bucketHead[bucket] = to;
+        }
+        if (next >= 0) {
+            this.previousInBucket[next] = to;
+        }
+    }
+
+    /**
+     * Backward shift deletion: instead of leaving a tombstone, the following entries of the probe
+     * sequence are moved into the hole whenever their home slot allows it.
+     */
+    private void delete(final int slot) {
+        final boolean indexed = this.bucketOf != null;
+        if (indexed) {
+            this.unlink(slot);
+        }
+        this.sizeDistinct--;
+
+        final int mask = this.keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        Object key;
+        while ((key = this.keys[next]) != null) {
+            final int home = indexFor(key, mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = key;
+                this.counts[gap] = this.counts[next];
+                if (indexed) {
+                    this.relink(next, gap);
+                }
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[gap] = null;
+        this.counts[gap] = 0;
+    }
+
+    /**
+     * The buckets keep their identifiers, only the slots of the table move.
+     */
+    private void rehash(final int newCapacity) {
+        final Object[] oldKeys = this.keys;
+        final int[] oldCounts = this.counts;
+        final int[] oldBucketOf = this.bucketOf;
+        this.keys = new Object[newCapacity];
+        this.counts = new int[newCapacity];
+        if (oldBucketOf != null) {
+            this.bucketOf = new int[newCapacity];
+            this.nextInBucket = new int[newCapacity];
+            this.previousInBucket = new int[newCapacity];
+            this.bucketCount = Arrays.copyOf(this.bucketCount, bucketsFor(newCapacity));
+            this.bucketHead = Arrays.copyOf(this.bucketHead, bucketsFor(newCapacity));
+            this.higher = Arrays.copyOf(this.higher, bucketsFor(newCapacity));
+            this.lower = Arrays.copyOf(this.lower, bucketsFor(newCapacity));
+            Arrays.fill(this.bucketHead, 0, this.bucketsUsed, -1);
+        }
+
+        final int mask = newCapacity - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            final Object key = oldKeys[oldSlot];
+            if (key == null) {
+                continue;
+            }
+            int slot = indexFor(key, mask);
+            while (this.keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            this.keys[slot] = key;
+            this.counts[slot] = oldCounts[oldSlot];
+            if (oldBucketOf == null) {
+                continue;
+            }
+
+            final int bucket = oldBucketOf[oldSlot];
+            final int head = this.bucketHead[bucket];
+            this.bucketOf[slot] = bucket;
+            this.previousInBucket[slot] = -1;
+            this.nextInBucket[slot] = head;
+            if (head >= 0) {
+                this.previousInBucket[head] = slot;
+            }
+            this.bucketHead[bucket] = slot;
+        }
+    }
+
+    /**
+     * Allocates an empty table, without the frequency index.
+     */
+    private void allocate(final int capacity) {
+        this.keys = new Object[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Allocates an empty frequency index for a table of the given capacity.
+     */
+    private void allocateIndex(final int capacity) {
+        this.bucketOf = new int[capacity];
+        this.nextInBucket = new int[capacity];
+        this.previousInBucket = new int[capacity];
+        this.bucketCount = new int[bucketsFor(capacity)];
+        this.bucketHead = new int[bucketsFor(capacity)];
+        this.higher = new int[bucketsFor(capacity)];
+        this.lower = new int[bucketsFor(capacity)];
+        this.highest = -1;
+        this.lowest = -1;
+        this.freeBucket = -1;
+        this.bucketsUsed = 0;
+    }
+
+    /**
+     * Splittable view over the slots {@code [index, fence)} of the table, split in halves by slot range.
+     * The exact size is only known before the first split, after that the size is estimated from the fraction
+     * of the table covered.
+     */
+    private abstract static class TableSpliterator<T, R> implements Spliterator<R> {
+        final Object[] keys;
+        final int[] counts;
+        int index;
+        final int fence;
+        long estimate;
+        boolean sized;
+
+        TableSpliterator(final Object[] keys, final int[] counts, final int index, final int fence,
+                         final long estimate) {
+            this.keys = keys;
+            this.counts = counts;
+            this.index = index;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.sized = index == 0 && fence == keys.length;
+        }
+
+        abstract TableSpliterator<T, R> split(int origin, int middle, long estimate);
+
+        @Override
+        public Spliterator<R> trySplit() {
+            final int origin = this.index;
+            final int middle = (origin + this.fence) >>> 1;
+            if (origin >= middle) {
+                return null;
+            }
+            this.index = middle;
+            this.estimate >>>= 1;
+            this.sized = false;
+            return this.split(origin, middle, this.estimate);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return this.sized ? Spliterator.SIZED : 0;
+        }
+    }
+
+    private static final class DistinctSpliterator<T> extends TableSpliterator<T, T> {
+
+        DistinctSpliterator(final Object[] keys, final int[] counts, final int index, final int fence,
+                            final long estimate) {
+            super(keys, counts, index, fence, estimate);
+        }
+
+        @Override
+        DistinctSpliterator<T> split(final int origin, final int middle, final long estimate) {
+            return new DistinctSpliterator<>(this.keys, this.counts, origin, middle, estimate);
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            while (this.index < this.fence) {
+                final Object key = this.keys[this.index++];
+                if (key != null) {
+                    action.accept(unmaskNull(key));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super T> action) {
+            final Object[] keys = this.keys;
+            for (int slot = this.index; slot < this.fence; slot++) {
+                if (keys[slot] != null) {
+                    action.accept(unmaskNull(keys[slot]));
+                }
+            }
+            this.index = this.fence;
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | Spliterator.DISTINCT;
+        }
+    }
+
+    private static final class EntrySpliterator<T> extends TableSpliterator<T, Map.Entry<T, Integer>> {
+
+        EntrySpliterator(final Object[] keys, final int[] counts, final int index, final int fence,
+                         final long estimate) {
+            super(keys, counts, index, fence, estimate);
+        }
+
+        @Override
+        EntrySpliterator<T> split(final int origin, final int middle, final long estimate) {
+            return new EntrySpliterator<>(this.keys, this.counts, origin, middle, estimate);
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super Map.Entry<T, Integer>> action) {
+            while (this.index < this.fence) {
+                final int slot = this.index++;
+                if (this.keys[slot] != null) {
+                    action.accept(new AbstractMap.SimpleImmutableEntry<>(unmaskNull(this.keys[slot]), this.counts[slot]));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+
+    /**
+     * Emits each element as many times as its count; a split never cuts the run of the element in progress.
+     */
+    private static final class OccurrencesSpliterator<T> extends TableSpliterator<T, T> {
+        private T current;
+        private int remaining = 0;
+
+        OccurrencesSpliterator(final Object[] keys, final int[] counts, final int index, final int fence,
+                               final long estimate) {
+            super(keys, counts, index, fence, estimate);
+        }
+
+        @Override
+        OccurrencesSpliterator<T> split(final int origin, final int middle, final long estimate) {
+            return new OccurrencesSpliterator<>(this.keys, this.counts, origin, middle, estimate);
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return this.remaining > 0 ? null : super.trySplit();
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            while (this.remaining == 0) {
+                if (this.index >= this.fence) {
+                    return false;
+                }
+                final int slot = this.index++;
+                if (this.keys[slot] != null) {
+                    this.current = unmaskNull(this.keys[slot]);
+                    this.remaining = this.counts[slot];
+                }
+            }
+            this.remaining--;
+            action.accept(this.current);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super T> action) {
+            for (; this.remaining > 0; this.remaining--) {
+                action.accept(this.current);
+            }
+            final Object[] keys = this.keys;
+            final int[] counts = this.counts;
+            for (int slot = this.index; slot < this.fence; slot++) {
+                if (keys[slot] != null) {
+                    final T element = unmaskNull(keys[slot]);
+                    for (int i = 0; i < counts[slot]; i++) {
+                        action.accept(element);
+                    }
+                }
+            }
+            this.index = this.fence;
+        }
+    }
+
+    /**
+     * There is at most one bucket per distinct element, plus the one inserted before the slot leaves its bucket.
+     */
+    private static int bucketsFor(final int capacity) {
+        return (capacity >> 1) + 1;
+    }
+
+    /**
+     * The table is kept at most half full, which keeps the linear probe sequences short.
+     */
+    private static int tableSizeFor(final int expectedDistinct, final int minimum) {
+        final int required = Math.max(minimum, expectedDistinct << 1);
+        return Integer.highestOneBit(required - 1) << 1;
+    }
+
+    /**
+     * The hash code is spread with the golden ratio multiplier, so that keys whose hash codes
+     * differ only in the upper bits do not collide in the same probe sequence.
+     */
+    private static int indexFor(final Object key, final int mask) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static Object maskNull(final Object element) {
+        return element == null ? NULL_ELEMENT : element;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unmaskNull(final Object key) {
+        return key == NULL_ELEMENT ? null : (T) key;
     }
 }
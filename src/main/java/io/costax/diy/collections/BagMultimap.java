@@ -0,0 +1,169 @@
+package io.costax.diy.collections;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Multimap whose values are counted per key, like a {@link Bag} per key: a value added n times to a key is stored
+ * once with the count n, instead of n entries of a {@link ListMultimap}, which suits duplicate-heavy values such as
+ * events per user.
+ * <p>
+ * The counts are not a {@link java.util.Collection}, so this class does not extend {@link Multimap} but offers the
+ * same operations with counts: {@link #count(Object, Object)} and {@link #addOccurrences(Object, Object, int)}.
+ * <p>
+ * The values of a key live in a {@link Bag} created with 2 slots, since most keys have a few values. Its frequency
+ * index is only built by {@link Bag#topOccurrences(int)}, which this class never calls, so a key costs the table of
+ * its bag and no more. The bag is wrapped in a {@link ValueCounts}, the read-only view returned by
+ * {@link #get(Object)}, so {@link #size()} can be a counter kept by the methods of this class.
+ */
+public class BagMultimap<K, V> {
+
+    private final Map<K, ValueCounts<V>> backingMap = new HashMap<>();
+    private int size;
+
+    /**
+     * @return a live, read-only view of the values of the key with their counts, empty if the key has no values.
+     */
+    public ValueCounts<V> get(final K key) {
+        final ValueCounts<V> values = this.backingMap.get(key);
+        return values != null ? values : ValueCounts.empty();
+    }
+
+    /**
+     * @return the occurrences of the value in the key.
+     */
+    public int count(final K key, final V value) {
+        return this.get(key).getOccurrences(value);
+    }
+
+    public boolean containsKey(final K key) {
+        return this.backingMap.containsKey(key);
+    }
+
+    /**
+     * @return the occurrences of the value in the key, after the addition.
+     */
+    public int addOccurrences(final K key, final V value, final int occurrences) {
+        if (occurrences < 0) {
+            throw new IllegalArgumentException("Cannot add a negative number of occurrences: " + occurrences);
+        }
+        if (occurrences == 0) {
+            return this.count(key, value);
+        }
+        this.size += occurrences;
+        return this.backingMap.computeIfAbsent(key, k -> new ValueCounts<>()).bag.addOccurrences(value, occurrences);
+    }
+
+    public boolean put(final K key, final V value) {
+        this.addOccurrences(key, value, 1);
+        return true;
+    }
+
+    public boolean remove(final K key, final V value) {
+        return this.removeOccurrences(key, value, 1);
+    }
+
+    /**
+     * Removes up to {@code occurrences} occurrences of the value from the key.
+     */
+    public boolean removeOccurrences(final K key, final V value, final int occurrences) {
+        final ValueCounts<V> values = this.backingMap.get(key);
+        if (values == null) {
+            return false;
+        }
+
+        final int before = values.bag.size();
+        if (!values.bag.removeOccurrences(value, occurrences)) {
+            return false;
+        }
+        this.size -= before - values.bag.size();
+        if (values.isEmpty()) {
+            this.backingMap.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * @return the removed values, or null if the key had no values.
+     */
+    public ValueCounts<V> removeAll(final K key) {
+        final ValueCounts<V> removed = this.backingMap.remove(key);
+        if (removed != null) {
+            this.size -= removed.size();
+        }
+        return removed;
+    }
+
+    /**
+     * Visits the distinct values of the key with their counts.
+     */
+    public void forEach(final K key, final ObjIntConsumer<? super V> consumer) {
+        this.get(key).forEachWithIntOccurrences(consumer);
+    }
+
+    /**
+     * @return the occurrences of all the values of all the keys.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int keyCount() {
+        return this.backingMap.size();
+    }
+
+    /**
+     * @return a live, read-only view of the keys that have at least one value.
+     */
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(this.backingMap.keySet());
+    }
+
+    /**
+     * The values of a key with their counts: a read-only view of a {@link Bag} that only {@link BagMultimap} writes.
+     */
+    public static final class ValueCounts<V> {
+
+        private static final ValueCounts<?> EMPTY = new ValueCounts<>();
+
+        private final Bag<V> bag = Bag.withExpectedDistinct(1);
+
+        private ValueCounts() {
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> ValueCounts<V> empty() {
+            return (ValueCounts<V>) EMPTY;
+        }
+
+        public int getOccurrences(final V value) {
+            return this.bag.getOccurrences(value);
+        }
+
+        /**
+         * @return the occurrences of all the values.
+         */
+        public int size() {
+            return this.bag.size();
+        }
+
+        public int sizeDistinct() {
+            return this.bag.sizeDistinct();
+        }
+
+        public boolean isEmpty() {
+            return this.bag.size() == 0;
+        }
+
+        public void forEachWithIntOccurrences(final ObjIntConsumer<? super V> consumer) {
+            this.bag.forEachWithIntOccurrences(consumer);
+        }
+    }
+}
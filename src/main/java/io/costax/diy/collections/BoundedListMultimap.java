@@ -0,0 +1,300 @@
+package io.costax.diy.collections;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * {@link ListMultimap} with two bounds, for "most recent items per user" stores:
+ * <ul>
+ * <li>at most {@code maxValuesPerKey} values per key: the values of a key are a ring buffer, adding to a full key
+ * drops its oldest value;</li>
+ * <li>at most {@code maxKeys} keys: the keys are kept in a {@link LinkedHashMap} from the least to the most
+ * recently used, so adding a new key to a full multimap evicts the least recently used key with all its
+ * values.</li>
+ * </ul>
+ * Both evictions are O(1). They are reported to the {@link EvictionListener} and counted by
+ * {@link #valueEvictions()} and {@link #keyEvictions()}.
+ * <p>
+ * Only the writes count as uses: {@link #put(Object, Object)} moves the key to the most recently used end. The
+ * map is in insertion order, not in access order, so {@link #get(Object)}, the views, {@code forEach} and the
+ * serialization never reorder the keys, and reading every key while iterating {@link #keySet()} is safe. The
+ * serialized form keeps the bounds, the values and the order of the keys, but not the listener.
+ */
+public class BoundedListMultimap<K, V> extends ListMultimap<K, V> {
+
+    private static final long serialVersionUID = 5182566278188489250L;
+
+    private static final int INITIAL_RING_CAPACITY = 8;
+
+    private final int maxKeys;
+    private final int maxValuesPerKey;
+    private final transient EvictionListener<? super K, ? super V> listener;
+    private long valueEvictions;
+    private long keyEvictions;
+
+    /**
+     * The key evicted by the current write, reported once the map operation that evicted it has returned.
+     */
+    private transient K evictedKey;
+    private transient Collection<V> evictedValues;
+
+    public BoundedListMultimap(final int maxKeys, final int maxValuesPerKey) {
+        this(maxKeys, maxValuesPerKey, new EvictionListener<>() {
+        });
+    }
+
+    public BoundedListMultimap(final int maxKeys, final int maxValuesPerKey,
+                               final EvictionListener<? super K, ? super V> listener) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("The maximum number of keys must be positive: " + maxKeys);
+        }
+        if (maxValuesPerKey <= 0) {
+            throw new IllegalArgumentException("The maximum number of values per key must be positive: " + maxValuesPerKey);
+        }
+        this.maxKeys = maxKeys;
+        this.maxValuesPerKey = maxValuesPerKey;
+        this.listener = Objects.requireNonNull(listener);
+        this.backingMap = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, Collection<V>> eldest) {
+                if (this.size() <= BoundedListMultimap.this.maxKeys) {
+                    return false;
+                }
+                BoundedListMultimap.this.evict(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    @Override
+    protected Collection<V> getEmptyBackingCollection() {
+        return new Ring<>(this.maxValuesPerKey, INITIAL_RING_CAPACITY);
+    }
+
+    @Override
+    protected Collection<V> getEmptyBackingCollection(final int expectedSize) {
+        return new Ring<>(this.maxValuesPerKey, expectedSize);
+    }
+
+    @Override
+    public boolean put(final K key, final V value) {
+        final Collection<V> values = this.backingMap.get(key);
+        if (values == null) {
+            final boolean added = super.put(key, value);
+            this.notifyKeyEvicted();
+            return added;
+        }
+
+        // re-inserting the key moves it to the most recently used end
+        this.backingMap.remove(key);
+        this.backingMap.put(key, values);
+        if (values.size() == this.maxValuesPerKey) {
+            final V oldest = ((List<V>) values).get(0);
+            // the ring overwrites the oldest value
+            writable(values).add(value);
+            this.valueEvictions++;
+            this.listener.onValueEvicted(key, oldest);
+            return true;
+        }
+        return super.put(key, value);
+    }
+
+    /**
+     * Adds the values one by one, so that each dropped value is reported.
+     */
+    @Override
+    public Collection<V> putAll(final K key, final Iterable<V> values) {
+        for (final V value : values) {
+            this.put(key, value);
+        }
+        return this.get(key);
+    }
+
+    @Override
+    public void putAll(final Map<? extends K, ? extends Collection<? extends V>> map) {
+        for (final Map.Entry<? extends K, ? extends Collection<? extends V>> entry : map.entrySet()) {
+            for (final V value : entry.getValue()) {
+                this.put(entry.getKey(), value);
+            }
+        }
+    }
+
+    /**
+     * @return the number of values dropped from a full key.
+     */
+    public long valueEvictions() {
+        return this.valueEvictions;
+    }
+
+    /**
+     * @return the number of least recently used keys evicted from the multimap.
+     */
+    public long keyEvictions() {
+        return this.keyEvictions;
+    }
+
+    /**
+     * Called by {@code removeEldestEntry}, inside the map operation that added a key, so the listener is only
+     * notified by {@link #notifyKeyEvicted()}: a listener that writes to this multimap would otherwise modify the map
+     * in the middle of that operation.
+     */
+    private void evict(final K key, final Collection<V> values) {
+        this.sizeChanged(-values.size());
+        this.keyEvictions++;
+        this.evictedKey = key;
+        this.evictedValues = values;
+    }
+
+    private void notifyKeyEvicted() {
+        final Collection<V> values = this.evictedValues;
+        if (values == null) {
+            return;
+        }
+        final K key = this.evictedKey;
+        this.evictedKey = null;
+        this.evictedValues = null;
+        this.listener.onKeyEvicted(key, values);
+    }
+
+    @Override
+    protected Object writeReplace() {
+        return new SerializationProxy<>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /**
+     * Notified of the evictions, by the thread that caused them, once the write that caused them is complete, so a
+     * listener may itself write to the multimap. Both methods do nothing by default.
+     */
+    public interface EvictionListener<K, V> {
+
+        /**
+         * The oldest value of a full key was dropped to make room for a new one.
+         */
+        default void onValueEvicted(K key, V value) {
+        }
+
+        /**
+         * The least recently used key was evicted with all its values.
+         */
+        default void onKeyEvicted(K key, Collection<? extends V> values) {
+        }
+    }
+
+    /**
+     * Fixed maximum capacity circular list: adding to a full ring overwrites the oldest element. The array grows
+     * by doubling up to the maximum, so a key with a few values does not allocate the maximum upfront.
+     */
+    private static final class Ring<V> extends AbstractList<V> implements RandomAccess {
+        private final int maxSize;
+        private Object[] elements;
+        private int head;
+        private int size;
+
+        Ring(final int maxSize, final int initialCapacity) {
+            this.maxSize = maxSize;
+            this.elements = new Object[Math.max(1, Math.min(maxSize, initialCapacity))];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(final int index) {
+            Objects.checkIndex(index, this.size);
+            return (V) this.elements[(this.head + index) % this.elements.length];
+        }
+
+        @Override
+        public boolean add(final V value) {
+            if (this.size == this.maxSize) {
+                this.elements[this.head] = value;
+                this.head = (this.head + 1) % this.elements.length;
+                this.modCount++;
+                return true;
+            }
+            if (this.size == this.elements.length) {
+                this.grow();
+            }
+            this.elements[(this.head + this.size) % this.elements.length] = value;
+            this.size++;
+            this.modCount++;
+            return true;
+        }
+
+        @Override
+        public V remove(final int index) {
+            final V removed = this.get(index);
+            for (int i = index; i < this.size - 1; i++) {
+                this.elements[(this.head + i) % this.elements.length] = this.elements[(this.head + i + 1) % this.elements.length];
+            }
+            this.size--;
+            // Item 7: eliminate the obsolete reference
+            this.elements[(this.head + this.size) % this.elements.length] = null;
+            this.modCount++;
+            return removed;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        private void grow() {
+            final Object[] grown = new Object[Math.min(this.maxSize, this.elements.length << 1)];
+            for (int i = 0; i < this.size; i++) {
+                grown[i] = this.elements[(this.head + i) % this.elements.length];
+            }
+            this.elements = grown;
+            this.head = 0;
+        }
+    }
+
+    /**
+     * Item 90: serialization proxy with the bounds, followed by the {@link CollectionsCodec} records of the keys from
+     * the least to the most recently written.
+     */
+    private static class SerializationProxy<K, V> implements Serializable {
+        private static final long serialVersionUID = 5203841937450211374L;
+
+        private final int maxKeys;
+        private final int maxValuesPerKey;
+        private transient BoundedListMultimap<K, V> multimap;
+
+        SerializationProxy(final BoundedListMultimap<K, V> multimap) {
+            this.maxKeys = multimap.maxKeys;
+            this.maxValuesPerKey = multimap.maxValuesPerKey;
+            this.multimap = multimap;
+        }
+
+        private void writeObject(ObjectOutputStream stream) throws IOException {
+            stream.defaultWriteObject();
+            CollectionsCodec.encodeMultimap(this.multimap, stream);
+        }
+
+        private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+            stream.defaultReadObject();
+            try {
+                this.multimap = new BoundedListMultimap<>(this.maxKeys, this.maxValuesPerKey);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+            CollectionsCodec.decodeMultimap(stream, this.multimap::put);
+        }
+
+        private Object readResolve() {
+            return this.multimap;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package io.costax.diy.collections;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Compact binary format for {@link Bag} and {@link Multimap} snapshots, also used by their serialization
+ * proxies (Item 90).
+ * <p>
+ * Instead of the object graph written by the default serialized form (one boxed {@code Integer} per count, one
+ * collection object per key, ...) the snapshot is a flat sequence of records:
+ * <ul>
+ * <li>counts and sizes are unsigned LEB128 varints, a count lower than 128 takes a single byte;</li>
+ * <li>{@code String}, {@code Integer} and {@code Long} elements are written as tagged literals, any other
+ * element falls back to its own serialized form. All the fallback elements of a snapshot go through a single
+ * object stream, so the stream header and the class descriptors are written once and the next elements of a class
+ * only reference its descriptor. Inside a serialization proxy this is the enclosing object stream, so its
+ * {@link java.io.ObjectInputFilter} applies to the elements and they share object identity with the rest of the
+ * graph; a standalone snapshot opens its own object stream at the first fallback element;</li>
+ * <li>in multimaps, keys and values are dictionary encoded: an element that was already written is replaced by
+ * the varint id of its first occurrence. The id shares its varint with the tag (odd for an id, even for a tag),
+ * so the first 64 distinct elements are referenced with a single byte.</li>
+ * <li>a multimap is a sequence of {@code count, key, values} records ended by a zero count. The values of a key
+ * are copied with {@code toArray()} before their count is written and the number of keys is never written up
+ * front, so a snapshot of a {@link ConcurrentMultimap} taken while other threads write is consistent per key.</li>
+ * </ul>
+ * The {@code read} methods that take a consumer stream the records one by one, so a snapshot never has to be
+ * fully materialized in memory (only the dictionary of a multimap is).
+ */
+public final class CollectionsCodec {
+
+    private static final int FORMAT_VERSION = 3;
+    private static final int BAG = 'B';
+    private static final int MULTIMAP = 'M';
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_SERIALIZED = 4;
+
+    /**
+     * The array of a string literal grows by doubling from this size as its bytes are read, so a corrupt length
+     * ends in an {@link EOFException} instead of a huge allocation.
+     */
+    private static final int READ_CHUNK_SIZE = 8192;
+
+    private CollectionsCodec() {
+        throw new AssertionError();
+    }
+
+    public static void writeBag(final Bag<?> bag, final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        encodeBag(bag, data);
+        data.flush();
+    }
+
+    public static <T> Bag<T> readBag(final InputStream in) throws IOException {
+        return decodeBag(new DataInputStream(in));
+    }
+
+    /**
+     * Streams the elements of a bag snapshot with their counts, without building the bag.
+     */
+    public static <T> void readBag(final InputStream in, final ObjIntConsumer<? super T> consumer) throws IOException {
+        decodeBag(new DataInputStream(in), consumer);
+    }
+
+    public static void writeMultimap(final Multimap<?, ?> multimap, final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        encodeMultimap(multimap, data);
+        data.flush();
+    }
+
+    /**
+     * Reads a multimap snapshot into the given (usually empty) multimap.
+     *
+     * @return the target multimap
+     */
+    public static <K, V, M extends Multimap<K, V>> M readMultimap(final InputStream in, final M target) throws IOException {
+        decodeMultimap(new DataInputStream(in), target::put);
+        return target;
+    }
+
+    /**
+     * Streams the key value pairs of a multimap snapshot, without building the multimap.
+     */
+    public static <K, V> void readMultimap(final InputStream in, final BiConsumer<? super K, ? super V> consumer) throws IOException {
+        decodeMultimap(new DataInputStream(in), consumer);
+    }
+
+    static void encodeBag(final Bag<?> bag, final DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(BAG);
+        writeVarInt(out, bag.sizeDistinct());
+
+        // bag elements are distinct, a dictionary would not save anything
+        final Writer writer = new Writer(out, false);
+        final Bag.Cursor<?> cursor = bag.cursor();
+        while (cursor.advance()) {
+            writer.writeElement(cursor.key());
+            writeVarInt(out, cursor.count());
+        }
+    }
+
+    static <T> Bag<T> decodeBag(final DataInput in) throws IOException {
+        final Bag<T> bag = new Bag<>();
+        decodeBag(in, bag::addOccurrences);
+        return bag;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> void decodeBag(final DataInput in, final ObjIntConsumer<? super T> consumer) throws IOException {
+        readHeader(in, BAG);
+        final Reader reader = new Reader(in, false);
+        final int distinct = readLength(in);
+        for (int i = 0; i < distinct; i++) {
+            final T element = (T) reader.readElement();
+            final int count = readLength(in);
+            consumer.accept(element, count);
+        }
+    }
+
+    static void encodeMultimap(final Multimap<?, ?> multimap, final DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(MULTIMAP);
+
+        final Writer writer = new Writer(out, true);
+        for (final Map.Entry<?, ? extends Collection<?>> entry : multimap.backingMap.entrySet()) {
+            // a single read of the values, the collection of a concurrent multimap can change while it is written
+            final Object[] values = entry.getValue().toArray();
+            if (values.length == 0) {
+                continue;
+            }
+            writeVarInt(out, values.length);
+            writer.writeElement(entry.getKey());
+            for (final Object value : values) {
+                writer.writeElement(value);
+            }
+        }
+        writeVarInt(out, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> void decodeMultimap(final DataInput in, final BiConsumer<? super K, ? super V> consumer) throws IOException {
+        readHeader(in, MULTIMAP);
+        final Reader reader = new Reader(in, true);
+        int values;
+        while ((values = readLength(in)) != 0) {
+            final K key = (K) reader.readElement();
+            for (int i = 0; i < values; i++) {
+                consumer.accept(key, (V) reader.readElement());
+            }
+        }
+    }
+
+    private static void readHeader(final DataInput in, final int type) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new StreamCorruptedException("Unsupported format version: " + version);
+        }
+        final int actual = in.readUnsignedByte();
+        if (actual != type) {
+            throw new StreamCorruptedException("Expected a '" + (char) type + "' snapshot, found: '" + (char) actual + "'");
+        }
+    }
+
+    static void writeVarInt(final DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(final DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    /**
+     * Reads a count or a length, which the writer never writes negative.
+     */
+    static int readLength(final DataInput in) throws IOException {
+        final int length = readVarInt(in);
+        if (length < 0) {
+            throw new StreamCorruptedException("Negative length: " + length);
+        }
+        return length;
+    }
+
+    static void writeVarLong(final DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(final DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    private static final class Writer {
+        private final DataOutput out;
+        private final Map<Object, Integer> dictionary;
+        private ObjectOutput objects;
+
+        Writer(final DataOutput out, final boolean dictionary) {
+            this.out = out;
+            this.dictionary = dictionary ? new HashMap<>() : null;
+        }
+
+        void writeElement(final Object element) throws IOException {
+            if (element == null) {
+                this.writeTag(TAG_NULL);
+                return;
+            }
+            if (this.dictionary != null) {
+                final Integer id = this.dictionary.putIfAbsent(element, this.dictionary.size());
+                if (id != null) {
+                    writeVarInt(this.out, (id << 1) | 1);
+                    return;
+                }
+            }
+
+            if (element instanceof String) {
+                final byte[] bytes = ((String) element).getBytes(StandardCharsets.UTF_8);
+                this.writeTag(TAG_STRING);
+                writeVarInt(this.out, bytes.length);
+                this.out.write(bytes);
+            } else if (element instanceof Integer) {
+                final int value = (Integer) element;
+                this.writeTag(TAG_INTEGER);
+                writeVarInt(this.out, (value << 1) ^ (value >> 31));
+            } else if (element instanceof Long) {
+                final long value = (Long) element;
+                this.writeTag(TAG_LONG);
+                writeVarLong(this.out, (value << 1) ^ (value >> 63));
+            } else if (element instanceof Serializable) {
+                this.writeTag(TAG_SERIALIZED);
+                if (this.out instanceof ObjectOutput) {
+                    ((ObjectOutput) this.out).writeObject(element);
+                    return;
+                }
+                if (this.objects == null) {
+                    this.objects = new ObjectOutputStream(new DataOutputAdapter(this.out));
+                }
+                this.objects.writeObject(element);
+                // the records that follow are written directly to out
+                this.objects.flush();
+            } else {
+                throw new InvalidObjectException("Element is not serializable: " + element.getClass().getName());
+            }
+        }
+
+        private void writeTag(final int tag) throws IOException {
+            writeVarInt(this.out, tag << 1);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInput in;
+        private final List<Object> dictionary;
+        private ObjectInput objects;
+
+        Reader(final DataInput in, final boolean dictionary) {
+            this.in = in;
+            this.dictionary = dictionary ? new ArrayList<>() : null;
+        }
+
+        Object readElement() throws IOException {
+            final int header = readVarInt(this.in);
+            if ((header & 1) != 0) {
+                if (this.dictionary == null) {
+                    throw new StreamCorruptedException("Unexpected reference");
+                }
+                final int id = header >>> 1;
+                if (id >= this.dictionary.size()) {
+                    throw new StreamCorruptedException("Unknown reference: " + id);
+                }
+                return this.dictionary.get(id);
+            }
+
+            final int tag = header >>> 1;
+            if (tag == TAG_NULL) {
+                return null;
+            }
+
+            final Object element = this.readLiteral(tag);
+            if (this.dictionary != null) {
+                this.dictionary.add(element);
+            }
+            return element;
+        }
+
+        private Object readLiteral(final int tag) throws IOException {
+            switch (tag) {
+                case TAG_STRING:
+                    return new String(this.readBytes(), StandardCharsets.UTF_8);
+                case TAG_INTEGER:
+                    final int zigZagInt = readVarInt(this.in);
+                    return (zigZagInt >>> 1) ^ -(zigZagInt & 1);
+                case TAG_LONG:
+                    final long zigZagLong = readVarLong(this.in);
+                    return (zigZagLong >>> 1) ^ -(zigZagLong & 1);
+                case TAG_SERIALIZED:
+                    if (this.objects == null) {
+                        // the enclosing stream of a proxy keeps its filter, a standalone snapshot has its own stream
+                        this.objects = this.in instanceof ObjectInput
+                                ? (ObjectInput) this.in
+                                : new ObjectInputStream(new DataInputAdapter(this.in));
+                    }
+                    try {
+                        return this.objects.readObject();
+                    } catch (ClassNotFoundException e) {
+                        throw new InvalidObjectException("Unknown element class: " + e.getMessage());
+                    }
+                default:
+                    throw new StreamCorruptedException("Unknown element tag: " + tag);
+            }
+        }
+
+        private byte[] readBytes() throws IOException {
+            final int length = readLength(this.in);
+            byte[] bytes = new byte[Math.min(length, READ_CHUNK_SIZE)];
+            this.in.readFully(bytes);
+            while (bytes.length < length) {
+                final int read = bytes.length;
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, (long) read << 1));
+                this.in.readFully(bytes, read, bytes.length - read);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Lets the object stream of the fallback elements write into the snapshot.
+     */
+    private static final class DataOutputAdapter extends OutputStream {
+        private final DataOutput out;
+
+        DataOutputAdapter(final DataOutput out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            this.out.write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Lets the object stream of the fallback elements read from the snapshot. The object stream only asks for the
+     * bytes of the objects it reads, so it never consumes the records that follow.
+     */
+    private static final class DataInputAdapter extends InputStream {
+        private final DataInput in;
+
+        DataInputAdapter(final DataInput in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return this.in.readUnsignedByte();
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            this.in.readFully(bytes, offset, length);
+            return length;
+        }
+    }
+}
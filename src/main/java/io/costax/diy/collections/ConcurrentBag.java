@@ -0,0 +1,277 @@
+package io.costax.diy.collections;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Thread-safe {@link Bag} with the same API.
+ * <p>
+ * Every element has its own counter made of striped cells, in the spirit of {@link LongAdder}: while a key is
+ * not contended the counter is a single CAS on a base value, as soon as two threads collide the counter is
+ * inflated into padded cells and each thread updates its own cell. Concurrent {@code addOccurrence} calls on a
+ * hot key therefore do not contend on a single lock or CAS location.
+ * <p>
+ * Removals are serialized per key by the {@link ConcurrentHashMap} bin lock. When the last occurrences of an
+ * element are removed, the counter cells are <em>sealed</em> one by one, which takes an exact snapshot of the
+ * count: an addition either lands before its cell is sealed and is accounted for, or fails and is retried
+ * against the new counter of the key. No addition is ever lost.
+ * <p>
+ * {@link #size()} is an eventually consistent sum, like {@link LongAdder#sum()}.
+ * <p>
+ * Like {@link ConcurrentHashMap}, this bag does not accept null elements.
+ */
+public class ConcurrentBag<T> {
+
+    private final ConcurrentMap<T, Counter> backingMap;
+    private final LongAdder size = new LongAdder();
+
+    @SafeVarargs
+    public ConcurrentBag(T... elements) {
+        this(Arrays.asList(elements));
+    }
+
+    private ConcurrentBag(List<T> elements) {
+        this.backingMap = new ConcurrentHashMap<>(Math.max(16, elements.size()));
+        for (final T element : elements) {
+            this.addOccurrences(element, 1);
+        }
+    }
+
+    public int getOccurrences(final T element) {
+        Counter counter;
+        long count;
+        do {
+            counter = this.backingMap.get(element);
+            if (counter == null) {
+                return 0;
+            }
+            count = counter.sum();
+        } while (count == Counter.SEALED);
+        return (int) count;
+    }
+
+    /**
+     * @return the sum of all the counts, not an atomic snapshot if there are concurrent updates.
+     */
+    public int size() {
+        return this.size.intValue();
+    }
+
+    public int sizeDistinct() {
+        return this.backingMap.size();
+    }
+
+    /**
+     * @return the count of the element right after the addition, other threads may have changed it since.
+     */
+    public int addOccurrences(final T element, final int occurrences) {
+        Objects.requireNonNull(element);
+        if (occurrences < 0) {
+            throw new IllegalArgumentException("Cannot add a negative number of occurrences: " + occurrences);
+        }
+        if (occurrences == 0) {
+            return this.getOccurrences(element);
+        }
+
+        Counter counter;
+        do {
+            counter = this.backingMap.computeIfAbsent(element, key -> new Counter());
+        } while (!counter.add(occurrences));
+
+        this.size.add(occurrences);
+        final long count = counter.sum();
+        if (count == Counter.SEALED) {
+            // a concurrent removal sealed the counter after the addition, which it already took into account:
+            // the count lives in the replacing counter, if any
+            return this.getOccurrences(element);
+        }
+        return (int) count;
+    }
+
+    public int addOccurrence(final T element) {
+        return this.addOccurrences(element, 1);
+    }
+
+    public boolean removeOccurrence(final T element) {
+        return removeOccurrences(element, 1);
+    }
+
+    public boolean removeOccurrences(final T element, final int occurrences) {
+        final long[] removed = {-1L};
+        this.backingMap.computeIfPresent(element, (key, counter) -> {
+            if (counter.sum() > occurrences) {
+                // concurrent updates only add, so the count can not drop below zero
+                counter.add(-occurrences);
+                removed[0] = occurrences;
+                return counter;
+            }
+
+            final long existing = counter.seal();
+            if (existing > occurrences) {
+                removed[0] = occurrences;
+                return new Counter(existing - occurrences);
+            }
+            removed[0] = existing;
+            return null;
+        });
+
+        if (removed[0] < 0) {
+            return false;
+        }
+        this.size.add(-removed[0]);
+        return true;
+    }
+
+    public void forEachWithOccurrences(BiConsumer<T, Integer> biConsumer) {
+        this.backingMap.forEach((element, counter) -> {
+            final long count = counter.sum();
+            if (count != Counter.SEALED) {
+                biConsumer.accept(element, (int) count);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #forEachWithOccurrences(BiConsumer)} with a primitive count, so nothing is boxed.
+     */
+    public void forEachWithIntOccurrences(ObjIntConsumer<? super T> consumer) {
+        this.backingMap.forEach((element, counter) -> {
+            final long count = counter.sum();
+            if (count != Counter.SEALED) {
+                consumer.accept(element, (int) count);
+            }
+        });
+    }
+
+    public void forEach(Consumer<T> consumer) {
+        this.forEachWithIntOccurrences((element, count) -> {
+            for (int i = 0; i < count; i++) {
+                consumer.accept(element);
+            }
+        });
+    }
+
+    /**
+     * Striped counter of a single element.
+     */
+    private static final class Counter {
+
+        /**
+         * A sealed base or cell does not accept more updates, the counter has been replaced in the map.
+         */
+        static final long SEALED = Long.MIN_VALUE;
+
+        /**
+         * Each cell takes a whole cache line (8 longs), so that threads updating different cells
+         * do not invalidate each other (false sharing).
+         */
+        private static final int PADDING = 8;
+        private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+        private static final VarHandle BASE;
+        private static final VarHandle CELLS;
+        private static final VarHandle CELL = MethodHandles.arrayElementVarHandle(long[].class);
+
+        static {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                BASE = lookup.findVarHandle(Counter.class, "base", long.class);
+                CELLS = lookup.findVarHandle(Counter.class, "cells", long[].class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private volatile long base;
+        private volatile long[] cells;
+
+        Counter() {
+        }
+
+        Counter(final long base) {
+            this.base = base;
+        }
+
+        /**
+         * @return false if the counter is sealed and the update must be retried on the new counter.
+         */
+        boolean add(final long x) {
+            long[] cs = this.cells;
+            if (cs == null) {
+                final long b = this.base;
+                if (b == SEALED) {
+                    return false;
+                }
+                if (BASE.compareAndSet(this, b, b + x)) {
+                    return true;
+                }
+                CELLS.compareAndSet(this, null, new long[STRIPES * PADDING]);
+                cs = this.cells;
+            }
+            if (cs.length == 0) {
+                // sealed before any cell was installed
+                return false;
+            }
+
+            int stripe = (int) Thread.currentThread().getId() * 0x9E3779B9 >>> 16;
+            for (; ; ) {
+                final int index = (stripe & (STRIPES - 1)) * PADDING;
+                final long v = (long) CELL.getVolatile(cs, index);
+                if (v == SEALED) {
+                    return false;
+                }
+                if (CELL.compareAndSet(cs, index, v, v + x)) {
+                    return true;
+                }
+                stripe = ThreadLocalRandom.current().nextInt();
+            }
+        }
+
+        /**
+         * @return the current count, or {@link #SEALED}; not an atomic snapshot if there are concurrent updates.
+         */
+        long sum() {
+            long sum = this.base;
+            if (sum == SEALED) {
+                return SEALED;
+            }
+            final long[] cs = this.cells;
+            if (cs != null) {
+                for (int i = 0; i < cs.length; i += PADDING) {
+                    final long v = (long) CELL.getVolatile(cs, i);
+                    if (v == SEALED) {
+                        return SEALED;
+                    }
+                    sum += v;
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Seals the base and every cell, the result is the exact count at the moment the counter was sealed.
+         * Must only be called while holding the bin lock of the key.
+         */
+        long seal() {
+            long sum = (long) BASE.getAndSet(this, SEALED);
+            // the cells can be installed by an adder that failed the CAS of the base right before it was sealed
+            long[] cs = (long[]) CELLS.compareAndExchange(this, null, new long[0]);
+            if (cs != null) {
+                for (int i = 0; i < cs.length; i += PADDING) {
+                    sum += (long) CELL.getAndSet(cs, i, SEALED);
+                }
+            }
+            return sum;
+        }
+    }
+}
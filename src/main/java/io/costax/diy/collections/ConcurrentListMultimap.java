@@ -0,0 +1,18 @@
+package io.costax.diy.collections;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The values of each key live in a {@link CopyOnWriteArrayList}: reads and iterations are wait-free,
+ * which suits read-mostly keys such as a subscription registry.
+ */
+public class ConcurrentListMultimap<K, V> extends ConcurrentMultimap<K, V> {
+
+    private static final long serialVersionUID = 6141899282130050574L;
+
+    @Override
+    protected Collection<V> getEmptyBackingCollection() {
+        return new CopyOnWriteArrayList<>();
+    }
+}
@@ -0,0 +1,106 @@
+package io.costax.diy.collections;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe {@link Multimap} backed by a {@link ConcurrentHashMap}.
+ * <p>
+ * The writes of a key ({@code put}, {@code putAll}, {@code remove}) run inside {@code compute} and
+ * {@code computeIfPresent}, so they are serialized by the bin lock of that key only: writes to different keys do
+ * not contend, and removing the last value of a key removes the key in the same atomic step (an addition can not
+ * be lost in a collection that was just dropped from the map).
+ * <p>
+ * The reads never lock: {@link #get(Object)} is a {@link ConcurrentHashMap#get(Object)} and the value
+ * collections are safe to read while they are being modified. {@link #size()} is a {@link LongAdder}, so the writes
+ * do not contend on the counter either.
+ */
+public abstract class ConcurrentMultimap<K, V> extends Multimap<K, V> {
+
+    private static final long serialVersionUID = 7796433115593736539L;
+
+    private final LongAdder size = new LongAdder();
+
+    protected ConcurrentMultimap() {
+        this.backingMap = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    protected void sizeChanged(final int delta) {
+        this.size.add(delta);
+    }
+
+    @Override
+    public int size() {
+        return this.size.intValue();
+    }
+
+    /**
+     * @return a collection that supports concurrent reads while a single thread writes it.
+     */
+    @Override
+    protected abstract Collection<V> getEmptyBackingCollection();
+
+    @Override
+    public boolean put(final K key, final V value) {
+        final boolean[] added = {false};
+        this.backingMap.compute(key, (k, values) -> {
+            final Collection<V> target = values != null ? values : readOnlyView(this.getEmptyBackingCollection());
+            added[0] = writable(target).add(value);
+            return target;
+        });
+        if (added[0]) {
+            this.sizeChanged(1);
+        }
+        return added[0];
+    }
+
+    @Override
+    public Collection<V> putAll(final K key, final Iterable<V> values) {
+        final Collection<V> result = this.backingMap.compute(key, (k, existing) -> {
+            final Collection<V> target = existing != null ? existing : readOnlyView(this.getEmptyBackingCollection());
+            final Collection<V> collection = writable(target);
+            int added = 0;
+            for (final V value : values) {
+                if (collection.add(value)) {
+                    added++;
+                }
+            }
+            this.sizeChanged(added);
+            return target.isEmpty() ? null : target;
+        });
+        return result != null ? result : this.getEmptyView();
+    }
+
+    @Override
+    public void putAll(final Map<? extends K, ? extends Collection<? extends V>> map) {
+        for (final Map.Entry<? extends K, ? extends Collection<? extends V>> entry : map.entrySet()) {
+            final Collection<? extends V> values = entry.getValue();
+            if (!values.isEmpty()) {
+                this.backingMap.compute(entry.getKey(), (k, existing) -> {
+                    final Collection<V> target = existing != null
+                            ? existing : readOnlyView(this.getEmptyBackingCollection(values.size()));
+                    final int before = target.size();
+                    writable(target).addAll(values);
+                    this.sizeChanged(target.size() - before);
+                    return target;
+                });
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(final K key, final V value) {
+        final boolean[] removed = {false};
+        this.backingMap.computeIfPresent(key, (k, values) -> {
+            removed[0] = writable(values).remove(value);
+            return values.isEmpty() ? null : values;
+        });
+        if (removed[0]) {
+            this.sizeChanged(-1);
+        }
+        return removed[0];
+    }
+}
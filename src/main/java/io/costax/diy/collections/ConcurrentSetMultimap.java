@@ -0,0 +1,23 @@
+package io.costax.diy.collections;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The values of each key live in a concurrent set ({@link ConcurrentHashMap#newKeySet()}).
+ */
+public class ConcurrentSetMultimap<K, V> extends ConcurrentMultimap<K, V> {
+
+    private static final long serialVersionUID = 7892679975238224029L;
+
+    @Override
+    protected Collection<V> getEmptyBackingCollection() {
+        return ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    protected Collection<V> getEmptyView() {
+        return Collections.emptySet();
+    }
+}
@@ -0,0 +1,112 @@
+package io.costax.diy.collections;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free stack shared by many threads, instead of a {@link Stack} wrapped in {@code synchronized}.
+ * <p>
+ * It is a Treiber stack: a linked list whose {@code head} is swapped with a compare and set, no thread ever waits
+ * for another. Under contention the head itself becomes the bottleneck, so a thread whose CAS fails tries an
+ * elimination backoff before retrying: a push posts its node in a random slot of a small elimination array and
+ * spins briefly, and a pop that lost its CAS takes a posted node from a random slot. A push and a pop that meet
+ * there cancel out without touching the head; the pair is linearizable at the moment the pop takes the node.
+ * <p>
+ * Null elements are not permitted, {@link #pop()} returns null when the stack is empty.
+ */
+public class ConcurrentStack<E> {
+
+    private static final int ELIMINATION_SLOTS = Math.max(1, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) >> 1);
+    private static final int ELIMINATION_SPINS = 64;
+
+    private final AtomicReference<Node<E>> head = new AtomicReference<>();
+    private final AtomicReferenceArray<Node<E>> elimination = new AtomicReferenceArray<>(ELIMINATION_SLOTS);
+
+    public void push(final E e) {
+        final Node<E> node = new Node<>(Objects.requireNonNull(e));
+        for (; ; ) {
+            final Node<E> top = this.head.get();
+            node.next = top;
+            if (this.head.compareAndSet(top, node)) {
+                return;
+            }
+            if (this.offer(node)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the top element, or null if the stack is empty.
+     */
+    public E pop() {
+        for (; ; ) {
+            final Node<E> top = this.head.get();
+            if (top == null) {
+                return null;
+            }
+            if (this.head.compareAndSet(top, top.next)) {
+                return top.item;
+            }
+            final Node<E> eliminated = this.take();
+            if (eliminated != null) {
+                return eliminated.item;
+            }
+        }
+    }
+
+    /**
+     * @return the top element, or null if the stack is empty.
+     */
+    public E peek() {
+        final Node<E> top = this.head.get();
+        return top == null ? null : top.item;
+    }
+
+    public boolean isEmpty() {
+        return this.head.get() == null;
+    }
+
+    /**
+     * Posts the node for a concurrent pop.
+     *
+     * @return true if a pop took it, false if it was withdrawn and must be pushed again.
+     */
+    private boolean offer(final Node<E> node) {
+        final int slot = ThreadLocalRandom.current().nextInt(ELIMINATION_SLOTS);
+        if (!this.elimination.compareAndSet(slot, null, node)) {
+            return false;
+        }
+        for (int i = 0; i < ELIMINATION_SPINS; i++) {
+            if (this.elimination.get(slot) != node) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        // the withdrawal fails if a pop took the node in the meantime
+        return !this.elimination.compareAndSet(slot, node, null);
+    }
+
+    /**
+     * @return a node posted by a concurrent push, or null if there is none in the visited slot.
+     */
+    private Node<E> take() {
+        final int slot = ThreadLocalRandom.current().nextInt(ELIMINATION_SLOTS);
+        final Node<E> node = this.elimination.get(slot);
+        if (node != null && this.elimination.compareAndSet(slot, node, null)) {
+            return node;
+        }
+        return null;
+    }
+
+    private static final class Node<E> {
+        final E item;
+        Node<E> next;
+
+        Node(final E item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.costax.diy.collections;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate {@link Bag} for unbounded cardinalities (user agents, urls, ...), backed by a count-min sketch.
+ * <p>
+ * The memory is fixed by the requested error and confidence, no matter how many distinct elements are counted:
+ * a {@code depth x width} matrix of counters with {@code width = ceil(e / epsilon)} and
+ * {@code depth = ceil(ln(1 / (1 - confidence)))}. The price is that {@link #getOccurrences(Object)} is an
+ * estimate: it is never lower than the real count, and with probability {@code confidence} it does not exceed it
+ * by more than {@code epsilon * size()}.
+ * <p>
+ * Optionally, the {@code k} elements with the highest estimates are tracked exactly in a small {@link Bag}
+ * side table, the heavy hitters.
+ *
+ * @see <a href="https://sites.google.com/site/countminsketch/">The Count-Min Sketch</a>
+ */
+public class CountMinSketchBag<T> {
+
+    private final int depth;
+    private final int width;
+    private final int[] table;
+    private final int heavyHittersCapacity;
+    private final Bag<T> heavyHitters;
+    private int heavyHittersFloor = 0;
+    private int size = 0;
+
+    public CountMinSketchBag(final double epsilon, final double confidence) {
+        this(epsilon, confidence, 0);
+    }
+
+    public CountMinSketchBag(final double epsilon, final double confidence, final int heavyHitters) {
+        if (epsilon <= 0 || epsilon >= 1) {
+            throw new IllegalArgumentException("The error must be between 0 and 1: " + epsilon);
+        }
+        if (confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("The confidence must be between 0 and 1: " + confidence);
+        }
+        if (heavyHitters < 0) {
+            throw new IllegalArgumentException("The number of heavy hitters cannot be negative: " + heavyHitters);
+        }
+
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / (1 - confidence)));
+        this.table = new int[this.depth * this.width];
+        this.heavyHittersCapacity = heavyHitters;
+        this.heavyHitters = new Bag<>();
+    }
+
+    public int getOccurrences(final T element) {
+        final int hash = hash(element);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.table[this.indexFor(hash, row)]);
+        }
+        return estimate;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Uses the conservative update: a counter is only raised as far as the new estimate of the element, which
+     * keeps the over-estimation of the other elements sharing that counter lower than a plain increment.
+     *
+     * @return the estimated count of the element after the addition.
+     */
+    public int addOccurrences(final T element, final int occurrences) {
+        if (occurrences < 0) {
+            throw new IllegalArgumentException("Cannot add a negative number of occurrences: " + occurrences);
+        }
+
+        final int estimate = this.getOccurrences(element) + occurrences;
+        final int hash = hash(element);
+        for (int row = 0; row < this.depth; row++) {
+            final int index = this.indexFor(hash, row);
+            if (this.table[index] < estimate) {
+                this.table[index] = estimate;
+            }
+        }
+        this.size += occurrences;
+
+        if (this.heavyHittersCapacity > 0 && occurrences > 0) {
+            this.offerHeavyHitter(element, occurrences, estimate);
+        }
+        return estimate;
+    }
+
+    public int addOccurrence(final T element) {
+        return this.addOccurrences(element, 1);
+    }
+
+    /**
+     * @return the tracked heavy hitters with their estimated counts, most frequent first.
+     */
+    public List<Map.Entry<T, Integer>> heavyHitters() {
+        return this.heavyHitters.topOccurrences(this.heavyHittersCapacity);
+    }
+
+    /**
+     * The counts of the side table only grow, so the cached floor is a lower bound of its minimum and the
+     * minimum only has to be looked up when an element could actually enter the table.
+     */
+    private void offerHeavyHitter(final T element, final int occurrences, final int estimate) {
+        if (this.heavyHitters.getOccurrences(element) > 0) {
+            this.heavyHitters.addOccurrences(element, occurrences);
+            return;
+        }
+        if (this.heavyHitters.sizeDistinct() < this.heavyHittersCapacity) {
+            this.heavyHitters.addOccurrences(element, estimate);
+            return;
+        }
+        if (estimate <= this.heavyHittersFloor) {
+            return;
+        }
+
+        final Map.Entry<T, Integer> min = this.heavyHitters.bottomOccurrences(1).get(0);
+        this.heavyHittersFloor = min.getValue();
+        if (estimate > this.heavyHittersFloor) {
+            this.heavyHitters.removeOccurrences(min.getKey(), min.getValue());
+            this.heavyHitters.addOccurrences(element, estimate);
+        }
+    }
+
+    /**
+     * Double hashing (Kirsch and Mitzenmacher): the row hashes are derived from the two halves of a single
+     * mixed hash instead of computing {@code depth} independent hashes.
+     */
+    private int indexFor(final int hash, final int row) {
+        final int h1 = hash;
+        final int h2 = (hash >>> 16) | (hash << 16);
+        return row * this.width + Math.floorMod(h1 + row * h2, this.width);
+    }
+
+    private static int hash(final Object element) {
+        final int h = (element == null ? 0 : element.hashCode()) * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+}
@@ -0,0 +1,116 @@
+package io.costax.diy.collections;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * Array stack of {@code double}, the primitive counterpart of {@link Stack}: a push does not box (Item 61).
+ * <p>
+ * The array grows by {@code growthFactor} when full, and {@link #trimToSize()} releases the unused capacity after
+ * a spike.
+ */
+public class DoubleStack {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final float DEFAULT_GROWTH_FACTOR = 2.0f;
+
+    private final float growthFactor;
+    private double[] elements;
+    private int size = 0;
+
+    public DoubleStack() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_GROWTH_FACTOR);
+    }
+
+    /**
+     * @param growthFactor the capacity is multiplied by it when the stack is full, must be greater than 1.
+     */
+    public DoubleStack(final int initialCapacity, final float growthFactor) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("The initial capacity cannot be negative: " + initialCapacity);
+        }
+        if (!(growthFactor > 1.0f)) {
+            throw new IllegalArgumentException("The growth factor must be greater than 1: " + growthFactor);
+        }
+        this.growthFactor = growthFactor;
+        this.elements = new double[initialCapacity];
+    }
+
+    public void push(final double e) {
+        this.ensureCapacity(this.size + 1);
+        this.elements[this.size++] = e;
+    }
+
+    /**
+     * Pushes the values in order, the last one ends on the top.
+     */
+    public void pushAll(final double... values) {
+        this.ensureCapacity(this.size + values.length);
+        System.arraycopy(values, 0, this.elements, this.size, values.length);
+        this.size += values.length;
+    }
+
+    public double pop() {
+        if (this.size == 0) {
+            throw new EmptyStackException();
+        }
+        return this.elements[--this.size];
+    }
+
+    /**
+     * @return the {@code n} top values, in pop order.
+     * @throws EmptyStackException if the stack has less than {@code n} values.
+     */
+    public double[] popN(final int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Cannot pop a negative number of values: " + n);
+        }
+        if (n > this.size) {
+            throw new EmptyStackException();
+        }
+        final double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = this.elements[--this.size];
+        }
+        return values;
+    }
+
+    public double peek() {
+        if (this.size == 0) {
+            throw new EmptyStackException();
+        }
+        return this.elements[this.size - 1];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int capacity() {
+        return this.elements.length;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Shrinks the capacity to the current size.
+     */
+    public void trimToSize() {
+        if (this.elements.length > this.size) {
+            this.elements = Arrays.copyOf(this.elements, this.size);
+        }
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required > this.elements.length) {
+            final int grown = (int) Math.min(Integer.MAX_VALUE - 8, (long) (this.elements.length * (double) this.growthFactor) + 1);
+            this.elements = Arrays.copyOf(this.elements, Math.max(required, grown));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package io.costax.diy.collections;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable snapshot of a {@link Multimap}, built once and then read many times (routing tables, ...).
+ * <p>
+ * The layout is compressed sparse row (CSR): all the values are packed in one contiguous {@code values} array,
+ * grouped by key, and the keys live in an open addressing table ({@code keys}, linear probing) where the values of
+ * the key in slot {@code s} are {@code values[offsets[s]] .. values[offsets[s + 1] - 1]}. There is no collection
+ * object per key and no node per value: a value costs a single reference, a key a reference and an int.
+ * <p>
+ * {@link #get(Object)} returns a zero-copy, read-only {@link List} view over the slice of the key.
+ */
+public final class ImmutableMultimap<K, V> {
+
+    /**
+     * A null slot means an empty slot, so a null key is stored as this sentinel.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private final Object[] keys;
+    private final int[] offsets;
+    private final Object[] values;
+    private final int keyCount;
+
+    private ImmutableMultimap(final Object[] keys, final int[] offsets, final Object[] values, final int keyCount) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.values = values;
+        this.keyCount = keyCount;
+    }
+
+    /**
+     * @see Multimap#freeze()
+     */
+    public static <K, V> ImmutableMultimap<K, V> copyOf(final Multimap<K, V> multimap) {
+        // a single pass over the source takes a snapshot of every key with a copy of its values, the arrays are
+        // then built from the snapshot only: a concurrent multimap may change between two passes over its map
+        final List<Object> sourceKeys = new ArrayList<>(multimap.backingMap.size());
+        final List<Object[]> sourceValues = new ArrayList<>(multimap.backingMap.size());
+        for (final Map.Entry<K, Collection<V>> entry : multimap.backingMap.entrySet()) {
+            final Object[] values = entry.getValue().toArray();
+            if (values.length > 0) {
+                sourceKeys.add(maskNull(entry.getKey()));
+                sourceValues.add(values);
+            }
+        }
+
+        final int keyCount = sourceKeys.size();
+        int capacity = 2;
+        while (capacity < keyCount * 2) {
+            capacity <<= 1;
+        }
+        final Object[] keys = new Object[capacity];
+        final int[] offsets = new int[capacity + 1];
+        final int[] slots = new int[keyCount];
+        final int mask = capacity - 1;
+
+        // place the keys and count their values
+        int size = 0;
+        for (int i = 0; i < keyCount; i++) {
+            final Object key = sourceKeys.get(i);
+            int slot = indexFor(key, mask);
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            slots[i] = slot;
+            offsets[slot + 1] = sourceValues.get(i).length;
+            size += sourceValues.get(i).length;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            offsets[slot + 1] += offsets[slot];
+        }
+
+        // copy the values in the slice of their key
+        final Object[] values = new Object[size];
+        for (int i = 0; i < keyCount; i++) {
+            final Object[] slice = sourceValues.get(i);
+            System.arraycopy(slice, 0, values, offsets[slots[i]], slice.length);
+        }
+        return new ImmutableMultimap<>(keys, offsets, values, keyCount);
+    }
+
+    /**
+     * @return a read-only view of the values of the key, empty if there are none.
+     */
+    public List<V> get(final K key) {
+        final int slot = slotOf(this.keys, maskNull(key));
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        return new Slice<>(this.values, this.offsets[slot], this.offsets[slot + 1]);
+    }
+
+    public boolean containsKey(final K key) {
+        return slotOf(this.keys, maskNull(key)) >= 0;
+    }
+
+    /**
+     * @return the number of values.
+     */
+    public int size() {
+        return this.values.length;
+    }
+
+    public int keyCount() {
+        return this.keyCount;
+    }
+
+    /**
+     * Visits every key with the view of its values.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final BiConsumer<? super K, ? super List<V>> consumer) {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != null) {
+                final K key = this.keys[slot] == NULL_KEY ? null : (K) this.keys[slot];
+                consumer.accept(key, new Slice<>(this.values, this.offsets[slot], this.offsets[slot + 1]));
+            }
+        }
+    }
+
+    private static int slotOf(final Object[] keys, final Object key) {
+        final int mask = keys.length - 1;
+        int slot = indexFor(key, mask);
+        Object existing;
+        while ((existing = keys[slot]) != null) {
+            if (existing.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int indexFor(final Object key, final int mask) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static Object maskNull(final Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    /**
+     * Read-only view of {@code values[from] .. values[to - 1]}.
+     */
+    private static final class Slice<V> extends AbstractList<V> implements RandomAccess {
+        private final Object[] values;
+        private final int from;
+        private final int to;
+
+        Slice(final Object[] values, final int from, final int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(final int index) {
+            Objects.checkIndex(index, this.to - this.from);
+            return (V) this.values[this.from + index];
+        }
+
+        @Override
+        public int size() {
+            return this.to - this.from;
+        }
+    }
+}
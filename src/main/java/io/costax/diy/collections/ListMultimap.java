@@ -2,10 +2,26 @@ package io.costax.diy.collections;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.function.Function;
+import java.util.stream.Collector;
 
 public class ListMultimap<K, V> extends Multimap<K, V> {
+
+    private static final long serialVersionUID = 3448201831624389024L;
+
+    public static <T, K, V> Collector<T, ?, ListMultimap<K, V>> toListMultimap(
+            final Function<? super T, ? extends K> keyMapper,
+            final Function<? super T, ? extends V> valueMapper) {
+        return Multimap.toMultimap(keyMapper, valueMapper, ListMultimap::new);
+    }
+
     @Override
     protected Collection<V> getEmptyBackingCollection() {
         return new ArrayList<>();
     }
+
+    @Override
+    protected Collection<V> getEmptyBackingCollection(final int expectedSize) {
+        return new ArrayList<>(expectedSize);
+    }
 }
@@ -0,0 +1,271 @@
+package io.costax.diy.collections;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * {@link ListMultimap} specialized for {@code long} keys and values, e.g. account id to transaction ids.
+ * <p>
+ * Item 61: a {@code ListMultimap<Long, Long>} pays a boxed key, a map node and an {@code ArrayList} per key,
+ * and a boxed {@code Long} per value, about ten times the raw data. Here the keys live in an open addressing
+ * table ({@code keys}, linear probing, load factor 0.5) and the values of the key in slot {@code s} are the first
+ * {@code sizes[s]} longs of the growable array {@code values[s]}: a value costs 8 bytes, a key 8 bytes, an int and
+ * an array header. A null {@code values[s]} marks an empty slot, so every long is a valid key.
+ * <p>
+ * The values of a key keep their insertion order and may repeat, like in a {@link ListMultimap}.
+ */
+public class LongLongMultimap {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final int INITIAL_VALUES_CAPACITY = 4;
+    private static final long[] EMPTY = new long[0];
+
+    private long[] keys;
+    private long[][] values;
+    private int[] sizes;
+    private int keyCount;
+    private int size;
+
+    public LongLongMultimap() {
+        this(DEFAULT_INITIAL_CAPACITY >> 1);
+    }
+
+    /**
+     * @param expectedKeys number of keys the multimap holds without rehashing.
+     */
+    public LongLongMultimap(final int expectedKeys) {
+        if (expectedKeys < 0) {
+            throw new IllegalArgumentException("The expected number of keys cannot be negative: " + expectedKeys);
+        }
+        this.allocate(tableSizeFor(expectedKeys));
+    }
+
+    public void put(final long key, final long value) {
+        int slot = this.slotOf(key);
+        if (slot < 0) {
+            if (this.keyCount + 1 > this.keys.length >> 1) {
+                this.rehash(this.keys.length << 1);
+            }
+            slot = this.insert(key);
+        }
+
+        long[] existing = this.values[slot];
+        final int count = this.sizes[slot];
+        if (count == existing.length) {
+            existing = Arrays.copyOf(existing, count + (count >> 1) + 1);
+            this.values[slot] = existing;
+        }
+        existing[count] = value;
+        this.sizes[slot] = count + 1;
+        this.size++;
+    }
+
+    public void putAll(final long key, final long... values) {
+        for (final long value : values) {
+            this.put(key, value);
+        }
+    }
+
+    /**
+     * @return a copy of the values of the key, empty if there are none.
+     */
+    public long[] get(final long key) {
+        final int slot = this.slotOf(key);
+        return slot < 0 ? EMPTY : Arrays.copyOf(this.values[slot], this.sizes[slot]);
+    }
+
+    /**
+     * Visits the values of the key in insertion order, without copying them.
+     */
+    public void forEach(final long key, final LongConsumer consumer) {
+        final int slot = this.slotOf(key);
+        if (slot >= 0) {
+            final long[] existing = this.values[slot];
+            for (int i = 0, count = this.sizes[slot]; i < count; i++) {
+                consumer.accept(existing[i]);
+            }
+        }
+    }
+
+    /**
+     * Visits every key value pair.
+     */
+    public void forEach(final LongLongConsumer consumer) {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            final long[] existing = this.values[slot];
+            if (existing != null) {
+                final long key = this.keys[slot];
+                for (int i = 0, count = this.sizes[slot]; i < count; i++) {
+                    consumer.accept(key, existing[i]);
+                }
+            }
+        }
+    }
+
+    public void forEachKey(final LongConsumer consumer) {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.values[slot] != null) {
+                consumer.accept(this.keys[slot]);
+            }
+        }
+    }
+
+    public boolean containsKey(final long key) {
+        return this.slotOf(key) >= 0;
+    }
+
+    public int valueCount(final long key) {
+        final int slot = this.slotOf(key);
+        return slot < 0 ? 0 : this.sizes[slot];
+    }
+
+    /**
+     * Removes the first occurrence of the value from the values of the key.
+     */
+    public boolean remove(final long key, final long value) {
+        final int slot = this.slotOf(key);
+        if (slot < 0) {
+            return false;
+        }
+
+        final long[] existing = this.values[slot];
+        final int count = this.sizes[slot];
+        for (int i = 0; i < count; i++) {
+            if (existing[i] == value) {
+                System.arraycopy(existing, i + 1, existing, i, count - i - 1);
+                this.size--;
+                if (count == 1) {
+                    this.delete(slot);
+                } else {
+                    this.sizes[slot] = count - 1;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the removed values, empty if the key had none.
+     */
+    public long[] removeAll(final long key) {
+        final int slot = this.slotOf(key);
+        if (slot < 0) {
+            return EMPTY;
+        }
+        final long[] removed = Arrays.copyOf(this.values[slot], this.sizes[slot]);
+        this.size -= removed.length;
+        this.delete(slot);
+        return removed;
+    }
+
+    /**
+     * @return the number of values.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int keyCount() {
+        return this.keyCount;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    private int slotOf(final long key) {
+        final int mask = this.keys.length - 1;
+        int slot = indexFor(key, mask);
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insert(final long key) {
+        final int mask = this.keys.length - 1;
+        int slot = indexFor(key, mask);
+        while (this.values[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = new long[INITIAL_VALUES_CAPACITY];
+        this.keyCount++;
+        return slot;
+    }
+
+    /**
+     * Backward shift deletion, see {@link Bag}.
+     */
+    private void delete(final int slot) {
+        this.keyCount--;
+        final int mask = this.keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (this.values[next] != null) {
+            final int home = indexFor(this.keys[next], mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                this.sizes[gap] = this.sizes[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.keys[gap] = 0;
+        this.values[gap] = null;
+        this.sizes[gap] = 0;
+    }
+
+    private void rehash(final int newCapacity) {
+        final long[] oldKeys = this.keys;
+        final long[][] oldValues = this.values;
+        final int[] oldSizes = this.sizes;
+        this.allocate(newCapacity);
+
+        final int mask = newCapacity - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldValues[oldSlot] != null) {
+                int slot = indexFor(oldKeys[oldSlot], mask);
+                while (this.values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[oldSlot];
+                this.values[slot] = oldValues[oldSlot];
+                this.sizes[slot] = oldSizes[oldSlot];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        this.keys = new long[capacity];
+        this.values = new long[capacity][];
+        this.sizes = new int[capacity];
+    }
+
+    private static int tableSizeFor(final int expectedKeys) {
+        final int required = Math.max(DEFAULT_INITIAL_CAPACITY, expectedKeys << 1);
+        return Integer.highestOneBit(required - 1) << 1;
+    }
+
+    /**
+     * Sequential ids would fill consecutive slots and build long probe runs, so they are spread with the golden
+     * ratio multiplier.
+     */
+    private static int indexFor(final long key, final int mask) {
+        final int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Operation that accepts a {@code long} key and a {@code long} value.
+     */
+    @FunctionalInterface
+    public interface LongLongConsumer {
+        void accept(long key, long value);
+    }
+}
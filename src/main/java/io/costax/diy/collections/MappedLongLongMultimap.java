@@ -0,0 +1,659 @@
+package io.costax.diy.collections;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Off-heap, persistent {@link LongLongMultimap}: the key table and the values live in a memory-mapped file, so the
+ * multimap can hold far more values than the heap, and reopening it is mapping the file again (nothing is loaded).
+ * <p>
+ * Layout of the data file, mapped in regions of 64 MiB ({@link FileChannel#map} is limited to 2 GiB per mapping);
+ * the last region is mapped, and the file grown, in powers of two from 64 KiB, so the size of a new file follows
+ * the expected number of keys:
+ * <ul>
+ * <li>a 64 bytes header: magic, version, key table capacity, key count, size, next free offset;</li>
+ * <li>the key table, fixed at creation: open addressing slots of {@code key, count, head block, tail block};</li>
+ * <li>the value blocks: each key has a linked list of blocks of {@code capacity, next block, index of the first
+ * value} followed by the values. The capacity doubles from 8 to 8192 values, so appending never copies, and a
+ * small key wastes at most 8 slots.</li>
+ * </ul>
+ * Reads ({@link #forEach(long, LongConsumer)}, {@link #count(long)}) go straight to the mapped region, without
+ * copying to the heap.
+ * <p>
+ * Every {@link #put(long, long)} is first appended to a write-ahead log (the {@code .wal} file next to the data
+ * file) as a checksummed {@code key, value, index} record, then applied: the value, a new block and the slot of a
+ * new key are written to the mapped file, but the count and the tail block of the key stay on the heap. The OS
+ * may write any mapped page back at any time, so the metadata that an append changes (the counters of the
+ * header, the count and the tail of the slots) is only written by {@link #checkpoint()}, right after forcing the
+ * log. {@link #sync()} makes the log durable (group commit), and {@link #checkpoint()}, also run when the log
+ * reaches 16 MiB and on {@link #close()}, forces the mapped file and restarts the log with a record of the
+ * counters of the header.
+ * <p>
+ * On open, the file is brought back to the last checkpoint without trusting what was written after it: the keys
+ * of the log get back the count of their first record, the keys added since are dropped, and the records are
+ * replayed from the checkpointed next free offset, so the blocks allocated after the checkpoint are written
+ * again, never shared. A torn last record is dropped.
+ * <p>
+ * The multimap is append-only, sized for the expected number of keys at creation, and not thread-safe.
+ */
+public final class MappedLongLongMultimap implements Closeable {
+
+    private static final long MAGIC = 0x4449_594D_4D41_5031L;
+    private static final int VERSION = 2;
+
+    private static final int REGION_SHIFT = 26;
+    private static final long REGION_SIZE = 1L << REGION_SHIFT;
+    private static final long REGION_MASK = REGION_SIZE - 1;
+    private static final long MIN_MAPPING_SIZE = 64L << 10;
+
+    private static final long MAGIC_OFFSET = 0;
+    private static final long VERSION_OFFSET = 8;
+    private static final long CAPACITY_OFFSET = 12;
+    private static final long KEY_COUNT_OFFSET = 16;
+    private static final long SIZE_OFFSET = 24;
+    private static final long NEXT_FREE_OFFSET = 32;
+    private static final long HEADER_SIZE = 64;
+
+    /**
+     * A power of two that divides the region size, so a slot never spans two regions.
+     */
+    private static final int SLOT_SIZE = 32;
+    private static final int SLOT_KEY = 0;
+    private static final int SLOT_COUNT = 8;
+    private static final int SLOT_HEAD = 16;
+    private static final int SLOT_TAIL = 24;
+
+    private static final int BLOCK_CAPACITY = 0;
+    private static final int BLOCK_NEXT = 8;
+    private static final int BLOCK_FIRST = 16;
+    private static final int BLOCK_HEADER_SIZE = 24;
+    private static final int MIN_BLOCK_CAPACITY = 8;
+    private static final int MAX_BLOCK_CAPACITY = 8192;
+
+    private static final int RECORD_SIZE = 28;
+    private static final long WAL_LIMIT = 16L << 20;
+
+    private final FileChannel data;
+    private final FileChannel wal;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final DirtySlots dirtySlots = new DirtySlots();
+
+    private final int capacity;
+    private long keyCount;
+    private long size;
+    private long nextFree;
+    private long walLength;
+
+    private MappedLongLongMultimap(final FileChannel data, final FileChannel wal, final int capacity) throws IOException {
+        this.data = data;
+        this.wal = wal;
+
+        if (data.size() == 0) {
+            this.capacity = capacity;
+            this.nextFree = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+            // the new regions are zero filled, so all the slots are empty
+            this.map(this.nextFree);
+            this.putLong(MAGIC_OFFSET, MAGIC);
+            this.putInt(VERSION_OFFSET, VERSION);
+            this.putInt(CAPACITY_OFFSET, capacity);
+            this.checkpoint();
+        } else {
+            this.map(data.size());
+            if (this.getLong(MAGIC_OFFSET) != MAGIC) {
+                throw new StreamCorruptedException("Not a mapped multimap file");
+            }
+            if (this.getInt(VERSION_OFFSET) != VERSION) {
+                throw new StreamCorruptedException("Unsupported version: " + this.getInt(VERSION_OFFSET));
+            }
+            this.capacity = this.getInt(CAPACITY_OFFSET);
+            this.keyCount = this.getLong(KEY_COUNT_OFFSET);
+            this.size = this.getLong(SIZE_OFFSET);
+            this.nextFree = this.getLong(NEXT_FREE_OFFSET);
+            this.recover();
+        }
+    }
+
+    /**
+     * Opens the multimap stored in the file, or creates it if the file does not exist.
+     *
+     * @param expectedKeys the number of keys of a new multimap, ignored when the file exists.
+     */
+    public static MappedLongLongMultimap open(final Path path, final int expectedKeys) throws IOException {
+        if (expectedKeys < 0 || expectedKeys > 1 << 29) {
+            throw new IllegalArgumentException("The expected number of keys must be between 0 and 2^29: " + expectedKeys);
+        }
+        final FileChannel data = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        final FileChannel wal;
+        try {
+            wal = FileChannel.open(path.resolveSibling(path.getFileName() + ".wal"),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        } catch (IOException | RuntimeException e) {
+            data.close();
+            throw e;
+        }
+        try {
+            return new MappedLongLongMultimap(data, wal, tableSizeFor(expectedKeys));
+        } catch (IOException | RuntimeException e) {
+            data.close();
+            wal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the value to the values of the key.
+     *
+     * @throws IllegalStateException if the key is new and the key table is full.
+     */
+    public void put(final long key, final long value) throws IOException {
+        final int slot = this.slotOf(key);
+        if (slot < 0) {
+            // checked before logging, a record that cannot be applied would fail every replay
+            this.checkKeyTable();
+        }
+        final long index = slot < 0 ? 0 : this.countOf(slot);
+        this.log(key, value, index);
+        this.apply(key, value, index);
+        if (this.walLength >= WAL_LIMIT) {
+            this.checkpoint();
+        }
+    }
+
+    public void putAll(final long key, final long... values) throws IOException {
+        for (final long value : values) {
+            this.put(key, value);
+        }
+    }
+
+    /**
+     * @return the number of values of the key.
+     */
+    public long count(final long key) {
+        final int slot = this.slotOf(key);
+        return slot < 0 ? 0 : this.countOf(slot);
+    }
+
+    public boolean containsKey(final long key) {
+        return this.slotOf(key) >= 0;
+    }
+
+    /**
+     * @return a heap copy of the values of the key, empty if there are none.
+     */
+    public long[] get(final long key) {
+        final long count = this.count(key);
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many values to copy: " + count);
+        }
+        final long[] values = new long[(int) count];
+        final int[] next = {0};
+        this.forEach(key, value -> values[next[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Visits the values of the key in insertion order, reading them from the mapped file.
+     */
+    public void forEach(final long key, final LongConsumer consumer) {
+        final int slot = this.slotOf(key);
+        if (slot >= 0) {
+            this.forEachInBlocks(this.getLong(slotOffset(slot) + SLOT_HEAD), this.countOf(slot), consumer);
+        }
+    }
+
+    /**
+     * Visits every key value pair.
+     */
+    public void forEach(final LongLongMultimap.LongLongConsumer consumer) {
+        for (int slot = 0; slot < this.capacity; slot++) {
+            final long at = slotOffset(slot);
+            final long head = this.getLong(at + SLOT_HEAD);
+            if (head != 0) {
+                final long key = this.getLong(at + SLOT_KEY);
+                this.forEachInBlocks(head, this.countOf(slot), value -> consumer.accept(key, value));
+            }
+        }
+    }
+
+    /**
+     * @return the number of values.
+     */
+    public long size() {
+        return this.size;
+    }
+
+    public long keyCount() {
+        return this.keyCount;
+    }
+
+    /**
+     * Makes the appends logged so far durable.
+     */
+    public void sync() throws IOException {
+        this.wal.force(false);
+    }
+
+    /**
+     * Writes the metadata of the appends since the last checkpoint and the mapped file to disk, and restarts the
+     * write-ahead log.
+     */
+    public void checkpoint() throws IOException {
+        // a checkpoint torn by a crash is rolled back from the log, so the log must hold every change written here
+        this.wal.force(false);
+        final DirtySlots dirty = this.dirtySlots;
+        for (int index = 0; index < dirty.slots.length; index++) {
+            if (dirty.slots[index] != 0) {
+                final long at = slotOffset(dirty.slots[index] - 1);
+                this.putLong(at + SLOT_COUNT, dirty.counts[index]);
+                this.putLong(at + SLOT_TAIL, dirty.tails[index]);
+            }
+        }
+        dirty.clear();
+        this.putLong(KEY_COUNT_OFFSET, this.keyCount);
+        this.putLong(SIZE_OFFSET, this.size);
+        this.putLong(NEXT_FREE_OFFSET, this.nextFree);
+
+        for (final MappedByteBuffer region : this.regions) {
+            region.force();
+        }
+        this.data.force(true);
+        this.wal.truncate(0);
+        this.walLength = 0;
+        // the header of the data file can be ahead of this record until the next checkpoint completes
+        this.log(this.nextFree, this.keyCount, this.size);
+        this.wal.force(true);
+    }
+
+    /**
+     * Checkpoints and closes the files. The mapped regions are released by the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.data.isOpen()) {
+            return;
+        }
+        try {
+            this.checkpoint();
+        } finally {
+            this.data.close();
+            this.wal.close();
+        }
+    }
+
+    private void log(final long key, final long value, final long index) throws IOException {
+        this.record.clear();
+        this.record.putLong(key).putLong(value).putLong(index);
+        this.crc.reset();
+        this.crc.update(this.record.array(), 0, RECORD_SIZE - 4);
+        this.record.putInt((int) this.crc.getValue());
+        this.record.flip();
+        while (this.record.hasRemaining()) {
+            this.walLength += this.wal.write(this.record, this.walLength);
+        }
+    }
+
+    /**
+     * Brings the file back to the last checkpoint, whose counters are the first record of the log, and replays the
+     * other records.
+     */
+    private void recover() throws IOException {
+        final ByteBuffer checkpoint = ByteBuffer.allocate(RECORD_SIZE);
+        while (checkpoint.hasRemaining()) {
+            if (this.wal.read(checkpoint, checkpoint.position()) <= 0) {
+                break;
+            }
+        }
+        checkpoint.flip();
+        if (!this.isValid(checkpoint)) {
+            // torn while restarting the log, after the whole data file was forced: its header is up to date
+            this.checkpoint();
+            return;
+        }
+        this.nextFree = checkpoint.getLong();
+        this.keyCount = checkpoint.getLong();
+        this.size = checkpoint.getLong();
+
+        final Map<Long, Long> firstIndexes = new HashMap<>();
+        final long length = this.readLog((key, value, index) -> firstIndexes.putIfAbsent(key, index));
+        for (int slot = 0; slot < this.capacity; slot++) {
+            final long at = slotOffset(slot);
+            final long head = this.getLong(at + SLOT_HEAD);
+            if (head == 0) {
+                continue;
+            }
+            final Long firstIndex = firstIndexes.get(this.getLong(at + SLOT_KEY));
+            final long count = firstIndex != null ? firstIndex : this.getLong(at + SLOT_COUNT);
+            if (count == 0) {
+                // added after the checkpoint, the key is added again by the replay if it was logged
+                this.putLong(at + SLOT_KEY, 0);
+                this.putLong(at + SLOT_COUNT, 0);
+                this.putLong(at + SLOT_HEAD, 0);
+                this.putLong(at + SLOT_TAIL, 0);
+            } else if (firstIndex != null) {
+                this.putLong(at + SLOT_COUNT, count);
+                this.putLong(at + SLOT_TAIL, this.blockOf(head, count - 1));
+            }
+        }
+
+        this.readLog(this::apply);
+        if (this.wal.size() > length) {
+            this.checkpoint();
+        } else {
+            this.walLength = length;
+        }
+    }
+
+    /**
+     * Visits the records of the log that follow the checkpoint record, up to the first torn one.
+     *
+     * @return the length of the valid records, including the checkpoint record.
+     */
+    private long readLog(final RecordConsumer consumer) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 2048);
+        long position = RECORD_SIZE;
+        for (; ; ) {
+            buffer.clear();
+            if (this.wal.read(buffer, position) <= 0) {
+                return position;
+            }
+            buffer.flip();
+            if (buffer.remaining() < RECORD_SIZE) {
+                return position;
+            }
+            while (buffer.remaining() >= RECORD_SIZE) {
+                if (!this.isValid(buffer)) {
+                    // the last append did not complete, it was never acknowledged
+                    return position;
+                }
+                consumer.accept(buffer.getLong(), buffer.getLong(), buffer.getLong());
+                buffer.getInt();
+                position += RECORD_SIZE;
+            }
+        }
+    }
+
+    /**
+     * @return whether the checksum of the record at the position of the buffer matches.
+     */
+    private boolean isValid(final ByteBuffer buffer) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            return false;
+        }
+        this.crc.reset();
+        this.crc.update(buffer.array(), buffer.position(), RECORD_SIZE - 4);
+        return buffer.getInt(buffer.position() + RECORD_SIZE - 4) == (int) this.crc.getValue();
+    }
+
+    private void apply(final long key, final long value, final long index) throws IOException {
+        int slot = this.slotOf(key);
+        long count;
+        long tail;
+        if (slot < 0) {
+            if (index != 0) {
+                throw new StreamCorruptedException("Log record ahead of the data file for the key " + key);
+            }
+            this.checkKeyTable();
+            slot = -slot - 1;
+            final long at = slotOffset(slot);
+            count = 0;
+            tail = this.allocate(MIN_BLOCK_CAPACITY, 0);
+            this.putLong(at + SLOT_KEY, key);
+            // a non zero head marks the slot as used, the count and the tail are written by the next checkpoint
+            this.putLong(at + SLOT_HEAD, tail);
+            this.keyCount++;
+        } else {
+            final int dirty = this.dirtySlots.indexOf(slot);
+            final long at = slotOffset(slot);
+            count = dirty < 0 ? this.getLong(at + SLOT_COUNT) : this.dirtySlots.counts[dirty];
+            tail = dirty < 0 ? this.getLong(at + SLOT_TAIL) : this.dirtySlots.tails[dirty];
+        }
+        if (index != count) {
+            throw new StreamCorruptedException("Log record out of sequence for the key " + key);
+        }
+
+        final int blockCapacity = this.getInt(tail + BLOCK_CAPACITY);
+        if (count - this.getLong(tail + BLOCK_FIRST) == blockCapacity) {
+            final long next = this.allocate(Math.min(blockCapacity << 1, MAX_BLOCK_CAPACITY), count);
+            this.putLong(tail + BLOCK_NEXT, next);
+            tail = next;
+        }
+        this.putLong(tail + BLOCK_HEADER_SIZE + (count - this.getLong(tail + BLOCK_FIRST)) * Long.BYTES, value);
+        this.dirtySlots.put(slot, count + 1, tail);
+        this.size++;
+    }
+
+    private void checkKeyTable() {
+        if (this.keyCount >= this.capacity >>> 1) {
+            throw new IllegalStateException("The key table is full: " + this.keyCount + " keys");
+        }
+    }
+
+    private void forEachInBlocks(long block, final long count, final LongConsumer consumer) {
+        long index = 0;
+        while (index < count) {
+            final long end = Math.min(count, this.getLong(block + BLOCK_FIRST) + this.getInt(block + BLOCK_CAPACITY));
+            final ByteBuffer region = this.region(block);
+            int position = (int) ((block + BLOCK_HEADER_SIZE) & REGION_MASK);
+            for (; index < end; index++, position += Long.BYTES) {
+                consumer.accept(region.getLong(position));
+            }
+            block = this.getLong(block + BLOCK_NEXT);
+        }
+    }
+
+    /**
+     * @return the block of the chain that holds the value at the index.
+     */
+    private long blockOf(long block, final long index) {
+        while (index >= this.getLong(block + BLOCK_FIRST) + this.getInt(block + BLOCK_CAPACITY)) {
+            block = this.getLong(block + BLOCK_NEXT);
+        }
+        return block;
+    }
+
+    /**
+     * @return the count of the key in the slot, which is on the heap if the key was appended to since the last
+     * checkpoint.
+     */
+    private long countOf(final int slot) {
+        final int dirty = this.dirtySlots.indexOf(slot);
+        return dirty < 0 ? this.getLong(slotOffset(slot) + SLOT_COUNT) : this.dirtySlots.counts[dirty];
+    }
+
+    /**
+     * Allocates a block at the end of the file, moved to the next region if it would span two.
+     */
+    private long allocate(final int blockCapacity, final long first) throws IOException {
+        final long bytes = BLOCK_HEADER_SIZE + (long) blockCapacity * Long.BYTES;
+        long block = this.nextFree;
+        if (block >>> REGION_SHIFT != (block + bytes - 1) >>> REGION_SHIFT) {
+            block = ((block >>> REGION_SHIFT) + 1) << REGION_SHIFT;
+        }
+        this.map(block + bytes);
+        this.nextFree = block + bytes;
+
+        this.putInt(block + BLOCK_CAPACITY, blockCapacity);
+        this.putLong(block + BLOCK_NEXT, 0);
+        this.putLong(block + BLOCK_FIRST, first);
+        return block;
+    }
+
+    /**
+     * @return the slot of the key, or {@code -(insertion slot) - 1} if the key is absent.
+     */
+    private int slotOf(final long key) {
+        final int mask = this.capacity - 1;
+        int slot = indexFor(key, mask);
+        for (; ; ) {
+            final long at = slotOffset(slot);
+            if (this.getLong(at + SLOT_HEAD) == 0) {
+                return -slot - 1;
+            }
+            if (this.getLong(at + SLOT_KEY) == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Maps the regions up to the given length, mapping past the end of the file grows the file. The regions before
+     * the last one are whole, the last one is mapped again with twice the size when it is too small.
+     */
+    private void map(final long length) throws IOException {
+        final int last = (int) ((length - 1) >>> REGION_SHIFT);
+        for (int region = Math.max(0, this.regions.size() - 1); region <= last; region++) {
+            final long start = (long) region << REGION_SHIFT;
+            final long required = region < last ? REGION_SIZE : length - start;
+            if (region < this.regions.size() && this.regions.get(region).capacity() >= required) {
+                continue;
+            }
+            final long mappingSize = Math.min(REGION_SIZE, Math.max(MIN_MAPPING_SIZE, Long.highestOneBit(required - 1) << 1));
+            final MappedByteBuffer mapping = this.data.map(FileChannel.MapMode.READ_WRITE, start, mappingSize);
+            if (region < this.regions.size()) {
+                this.regions.set(region, mapping);
+            } else {
+                this.regions.add(mapping);
+            }
+        }
+    }
+
+    private ByteBuffer region(final long offset) {
+        return this.regions.get((int) (offset >>> REGION_SHIFT));
+    }
+
+    private long getLong(final long offset) {
+        return this.region(offset).getLong((int) (offset & REGION_MASK));
+    }
+
+    private void putLong(final long offset, final long value) {
+        this.region(offset).putLong((int) (offset & REGION_MASK), value);
+    }
+
+    private int getInt(final long offset) {
+        return this.region(offset).getInt((int) (offset & REGION_MASK));
+    }
+
+    private void putInt(final long offset, final int value) {
+        this.region(offset).putInt((int) (offset & REGION_MASK), value);
+    }
+
+    private static long slotOffset(final int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    private static int tableSizeFor(final int expectedKeys) {
+        final int required = Math.max(16, expectedKeys << 1);
+        return Integer.highestOneBit(required - 1) << 1;
+    }
+
+    /**
+     * Same spreading as {@link LongLongMultimap}.
+     */
+    private static int indexFor(final long key, final int mask) {
+        final int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(long key, long value, long index) throws IOException;
+    }
+
+    /**
+     * The count and the tail block of the slots appended to since the last checkpoint, in a slot to
+     * {@code count, tail} open addressing table (linear probing, kept at most half full).
+     */
+    private static final class DirtySlots {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * The slot plus one, so that 0 is an empty entry.
+         */
+        private int[] slots = new int[INITIAL_CAPACITY];
+        private long[] counts = new long[INITIAL_CAPACITY];
+        private long[] tails = new long[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * @return the entry of the slot, or -1 if it is not dirty.
+         */
+        int indexOf(final int slot) {
+            final int mask = this.slots.length - 1;
+            int index = indexFor(slot, mask);
+            int existing;
+            while ((existing = this.slots[index]) != 0) {
+                if (existing == slot + 1) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        void put(final int slot, final long count, final long tail) {
+            int index = this.indexOf(slot);
+            if (index < 0) {
+                if (this.size >= this.slots.length >> 1) {
+                    this.rehash(this.slots.length << 1);
+                }
+                index = this.freeIndex(slot);
+                this.slots[index] = slot + 1;
+                this.size++;
+            }
+            this.counts[index] = count;
+            this.tails[index] = tail;
+        }
+
+        void clear() {
+            if (this.size > 0) {
+                this.slots = new int[INITIAL_CAPACITY];
+                this.counts = new long[INITIAL_CAPACITY];
+                this.tails = new long[INITIAL_CAPACITY];
+                this.size = 0;
+            }
+        }
+
+        private int freeIndex(final int slot) {
+            final int mask = this.slots.length - 1;
+            int index = indexFor(slot, mask);
+            while (this.slots[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void rehash(final int newCapacity) {
+            final int[] oldSlots = this.slots;
+            final long[] oldCounts = this.counts;
+            final long[] oldTails = this.tails;
+            this.slots = new int[newCapacity];
+            this.counts = new long[newCapacity];
+            this.tails = new long[newCapacity];
+            for (int oldIndex = 0; oldIndex < oldSlots.length; oldIndex++) {
+                if (oldSlots[oldIndex] != 0) {
+                    final int index = this.freeIndex(oldSlots[oldIndex] - 1);
+                    this.slots[index] = oldSlots[oldIndex];
+                    this.counts[index] = oldCounts[oldIndex];
+                    this.tails[index] = oldTails[oldIndex];
+                }
+            }
+        }
+    }
+}
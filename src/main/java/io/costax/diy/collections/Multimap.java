@@ -1,59 +1,583 @@
 package io.costax.diy.collections;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Multimap (MultiValueMap)
  * <p>
  * A tradicional Map has a key to value relationship, but it is single key to single value.
  * We want to have a relationship, of single key and multiple values
- * Multiple values = Another collection can be List, Set or Bag.
+ * Multiple values = Another collection can be List, Set or Bag (see {@link BagMultimap}).
+ * <p>
+ * {@link #keySet()}, {@link #values()}, {@link #entries()}, {@link #asMap()} and {@link #stream()} are live,
+ * read-only views: they never copy, and their spliterators split on the keys, so a parallel stream over the values
+ * needs no intermediate list. The collections returned by {@link #get(Object)} and {@link #asMap()} are live,
+ * read-only views too, so every change goes through the multimap methods and {@link #size()} can be a counter
+ * updated by them. The view of a key is created once with its collection and kept in the backing map in its
+ * place: {@link #get(Object)} does not allocate.
+ * <p>
+ * The serialized form is the compact {@link CollectionsCodec} snapshot, written by a serialization proxy that
+ * recreates the concrete multimap with its no-arg constructor.
  *
  * @see <a href="https://www.eclipse.org/collections/">Eclipse Collections</a>
  * @see <a href="https://github.com/eclipse/eclipse-collections">eclipse collections github</a>
  */
-public abstract class Multimap<K, V> {
+public abstract class Multimap<K, V> implements Serializable {
+
+    private static final long serialVersionUID = 5926546460317759212L;
 
+    /**
+     * The keys with the read-only views of their collections, see {@link #readOnlyView(Collection)}. The writes go
+     * to {@link #writable(Collection)}.
+     */
     protected Map<K, Collection<V>> backingMap = new HashMap<>();
 
+    private int size;
+
+    /**
+     * Created once, a lambda capturing {@code this} in {@code put} would be a new object on every call.
+     */
+    private final transient Function<K, Collection<V>> newBackingCollection = key -> readOnlyView(this.getEmptyBackingCollection());
+
     protected abstract Collection<V> getEmptyBackingCollection();
 
+    /**
+     * Creates the collection of a new key that is about to receive {@code expectedSize} values at once. The
+     * subclasses backed by growable collections override it to allocate the final capacity upfront.
+     */
+    protected Collection<V> getEmptyBackingCollection(final int expectedSize) {
+        return this.getEmptyBackingCollection();
+    }
+
+    /**
+     * The shared, immutable, empty collection returned by {@link #get(Object)} for a key without values.
+     */
+    protected Collection<V> getEmptyView() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Records that {@code delta} values were added (or removed, if negative). Every write path calls it, the
+     * subclasses that write concurrently override it together with {@link #size()}.
+     */
+    protected void sizeChanged(final int delta) {
+        this.size += delta;
+    }
+
+    /**
+     * @return the number of key value pairs, in O(1).
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    public int keyCount() {
+        return this.backingMap.size();
+    }
+
+    /**
+     * @return a live, read-only view of the values of the key, or an immutable empty collection if there are none.
+     */
     public Collection<V> get(K key) {
-        return backingMap.getOrDefault(key, getEmptyBackingCollection());
+        final Collection<V> values = this.backingMap.get(key);
+        return values != null ? values : this.getEmptyView();
     }
 
     public boolean put(final K key, final V value) {
-        Collection<V> values = backingMap.getOrDefault(key, getEmptyBackingCollection());
-        boolean added = values.add(value);
-        backingMap.put(key, values);
+        final boolean added = writable(this.backingMap.computeIfAbsent(key, this.newBackingCollection)).add(value);
+        if (added) {
+            this.sizeChanged(1);
+        }
         return added;
     }
 
     public Collection<V> putAll(K key, Iterable<V> values) {
-        Collection<V> existingValue = this.backingMap
-                .getOrDefault(key, this.getEmptyBackingCollection());
-        for (V value : values) {
-            existingValue.add(value);
+        if (values instanceof Collection) {
+            return this.addAll(key, (Collection<V>) values);
         }
 
+        final Iterator<V> iterator = values.iterator();
+        if (!iterator.hasNext()) {
+            return this.get(key);
+        }
+
+        final Collection<V> existingValue = this.backingMap.computeIfAbsent(key, this.newBackingCollection);
+        final Collection<V> target = writable(existingValue);
+        int added = 0;
+        while (iterator.hasNext()) {
+            if (target.add(iterator.next())) {
+                added++;
+            }
+        }
+        this.sizeChanged(added);
         return existingValue;
     }
 
+    /**
+     * Adds all the values of each key of the map. Each key is looked up once and its values are added with a single
+     * {@code addAll}, a new key gets a collection already sized for them.
+     */
+    public void putAll(final Map<? extends K, ? extends Collection<? extends V>> map) {
+        for (final Map.Entry<? extends K, ? extends Collection<? extends V>> entry : map.entrySet()) {
+            this.addAll(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Collection<V> addAll(final K key, final Collection<? extends V> values) {
+        final Collection<V> existing = this.backingMap.get(key);
+        if (existing != null) {
+            final int before = existing.size();
+            writable(existing).addAll(values);
+            this.sizeChanged(existing.size() - before);
+            return existing;
+        }
+        if (values.isEmpty()) {
+            return this.getEmptyView();
+        }
+
+        final Collection<V> created = this.getEmptyBackingCollection(values.size());
+        created.addAll(values);
+        final Collection<V> view = readOnlyView(created);
+        this.backingMap.put(key, view);
+        this.sizeChanged(created.size());
+        return view;
+    }
+
     public Collection<V> removeAll(K key) {
-        return this.backingMap.remove(key);
+        final Collection<V> removed = this.backingMap.remove(key);
+        if (removed != null) {
+            this.sizeChanged(-removed.size());
+        }
+        return removed;
     }
 
     public boolean remove(K key, V value) {
-        Collection<V> existing = this.backingMap.getOrDefault(key, this.getEmptyBackingCollection());
-        if (!existing.isEmpty()) {
-            boolean removed = existing.remove(value);
-            if (removed && existing.isEmpty()) {
+        final Collection<V> existing = this.backingMap.get(key);
+        if (existing == null) {
+            return false;
+        }
+
+        final boolean removed = writable(existing).remove(value);
+        if (removed) {
+            this.sizeChanged(-1);
+            if (existing.isEmpty()) {
                 this.backingMap.remove(key);
             }
-            return removed;
         }
-        return false;
+        return removed;
+    }
+
+    /**
+     * @return a live, read-only view of the keys that have at least one value.
+     */
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(this.backingMap.keySet());
+    }
+
+    /**
+     * @return a live, read-only view of all the values, key by key.
+     */
+    public Collection<V> values() {
+        return new View<>(this, (key, value) -> value);
+    }
+
+    /**
+     * @return a live, read-only view of all the key value pairs, key by key.
+     */
+    public Collection<Map.Entry<K, V>> entries() {
+        return new View<>(this, AbstractMap.SimpleImmutableEntry::new);
+    }
+
+    /**
+     * @return a live, read-only view of the keys with their collections, which are the ones returned by
+     * {@link #get(Object)}.
+     */
+    public Map<K, Collection<V>> asMap() {
+        return Collections.unmodifiableMap(this.backingMap);
+    }
+
+    /**
+     * @return a stream of all the key value pairs, without copying them.
+     */
+    public Stream<Map.Entry<K, V>> stream() {
+        return this.entries().stream();
+    }
+
+    /**
+     * Visits every key value pair without creating an entry per pair.
+     */
+    public void forEach(final BiConsumer<? super K, ? super V> consumer) {
+        for (final Map.Entry<K, Collection<V>> entry : this.backingMap.entrySet()) {
+            final K key = entry.getKey();
+            for (final V value : entry.getValue()) {
+                consumer.accept(key, value);
+            }
+        }
+    }
+
+    /**
+     * Collects the elements of a stream into a multimap created by the supplier. Each thread of a parallel stream
+     * fills its own partial multimap, and the partial multimaps are merged key by key with
+     * {@link #putAll(Map)}, keeping the encounter order of the values.
+     *
+     * @see ListMultimap#toListMultimap(Function, Function)
+     * @see SetMultimap#toSetMultimap(Function, Function)
+     */
+    public static <T, K, V, M extends Multimap<K, V>> Collector<T, ?, M> toMultimap(
+            final Function<? super T, ? extends K> keyMapper,
+            final Function<? super T, ? extends V> valueMapper,
+            final Supplier<M> supplier) {
+        return Collector.of(
+                supplier,
+                (multimap, element) -> multimap.put(keyMapper.apply(element), valueMapper.apply(element)),
+                (left, right) -> {
+                    left.putAll(right.backingMap);
+                    return left;
+                });
+    }
+
+    /**
+     * @return an immutable, compact copy of this multimap for read-heavy use.
+     * @see ImmutableMultimap
+     */
+    public ImmutableMultimap<K, V> freeze() {
+        return ImmutableMultimap.copyOf(this);
+    }
+
+    /**
+     * @return the read-only view of a new collection, a {@code List} or a {@code Set} if the collection is one, so
+     * that the view keeps the {@code equals} of its kind.
+     */
+    static <V> Collection<V> readOnlyView(final Collection<V> values) {
+        if (values instanceof List) {
+            return new ReadOnlyList<>((List<V>) values);
+        }
+        if (values instanceof Set) {
+            return new ReadOnlySet<>(values);
+        }
+        return new ReadOnlyCollection<>(values);
+    }
+
+    /**
+     * @return the collection behind a view of the backing map.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> Collection<V> writable(final Collection<V> view) {
+        return ((ReadOnlyView<V>) view).delegate();
+    }
+
+    /**
+     * Read-only view of the collection of a key, stored in the backing map in place of the collection.
+     */
+    interface ReadOnlyView<V> {
+        Collection<V> delegate();
+    }
+
+    static final class ReadOnlyCollection<V> extends AbstractCollection<V> implements ReadOnlyView<V> {
+        private final Collection<V> delegate;
+
+        ReadOnlyCollection(final Collection<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Collection<V> delegate() {
+            return this.delegate;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return readOnlyIterator(this.delegate.iterator());
+        }
+
+        @Override
+        public int size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return this.delegate.contains(o);
+        }
+
+        @Override
+        public Object[] toArray() {
+            return this.delegate.toArray();
+        }
+
+        @Override
+        public void forEach(final Consumer<? super V> action) {
+            this.delegate.forEach(action);
+        }
+    }
+
+    static final class ReadOnlyList<V> extends AbstractList<V> implements ReadOnlyView<V> {
+        private final List<V> delegate;
+
+        ReadOnlyList(final List<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Collection<V> delegate() {
+            return this.delegate;
+        }
+
+        @Override
+        public V get(final int index) {
+            return this.delegate.get(index);
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return readOnlyIterator(this.delegate.iterator());
+        }
+
+        @Override
+        public int size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return this.delegate.contains(o);
+        }
+
+        @Override
+        public Object[] toArray() {
+            return this.delegate.toArray();
+        }
+
+        @Override
+        public void forEach(final Consumer<? super V> action) {
+            this.delegate.forEach(action);
+        }
+    }
+
+    static final class ReadOnlySet<V> extends AbstractSet<V> implements ReadOnlyView<V> {
+        private final Collection<V> delegate;
+
+        ReadOnlySet(final Collection<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Collection<V> delegate() {
+            return this.delegate;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return readOnlyIterator(this.delegate.iterator());
+        }
+
+        @Override
+        public int size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return this.delegate.contains(o);
+        }
+
+        @Override
+        public Object[] toArray() {
+            return this.delegate.toArray();
+        }
+
+        @Override
+        public void forEach(final Consumer<? super V> action) {
+            this.delegate.forEach(action);
+        }
+    }
+
+    private static <V> Iterator<V> readOnlyIterator(final Iterator<V> iterator) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public V next() {
+                return iterator.next();
+            }
+        };
+    }
+
+    /**
+     * Flat view of the pairs of a multimap, each pair mapped to an element by {@code mapper}.
+     */
+    private static final class View<K, V, E> extends AbstractCollection<E> {
+        private final Multimap<K, V> multimap;
+        private final BiFunction<? super K, ? super V, ? extends E> mapper;
+
+        View(final Multimap<K, V> multimap, final BiFunction<? super K, ? super V, ? extends E> mapper) {
+            this.multimap = multimap;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return Spliterators.iterator(this.spliterator());
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return new FlatSpliterator<>(this.multimap.backingMap.entrySet().spliterator(), this.mapper, this.multimap.size());
+        }
+
+        @Override
+        public Stream<E> stream() {
+            return StreamSupport.stream(this.spliterator(), false);
+        }
+
+        @Override
+        public Stream<E> parallelStream() {
+            return StreamSupport.stream(this.spliterator(), true);
+        }
+
+        @Override
+        public int size() {
+            return this.multimap.size();
+        }
+    }
+
+    /**
+     * Walks the values of the keys of a spliterator over the backing map. Splitting splits the keys, so each half
+     * walks the values of its own keys.
+     */
+    private static final class FlatSpliterator<K, V, E> implements Spliterator<E>, Consumer<Map.Entry<K, Collection<V>>> {
+        private final Spliterator<Map.Entry<K, Collection<V>>> keys;
+        private final BiFunction<? super K, ? super V, ? extends E> mapper;
+        private long estimatedSize;
+        private K key;
+        private Iterator<V> values;
+
+        FlatSpliterator(final Spliterator<Map.Entry<K, Collection<V>>> keys,
+                        final BiFunction<? super K, ? super V, ? extends E> mapper,
+                        final long estimatedSize) {
+            this.keys = keys;
+            this.mapper = mapper;
+            this.estimatedSize = estimatedSize;
+        }
+
+        @Override
+        public void accept(final Map.Entry<K, Collection<V>> entry) {
+            this.key = entry.getKey();
+            this.values = entry.getValue().iterator();
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super E> action) {
+            while (this.values == null || !this.values.hasNext()) {
+                if (!this.keys.tryAdvance(this)) {
+                    return false;
+                }
+            }
+            action.accept(this.mapper.apply(this.key, this.values.next()));
+            return true;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            final Spliterator<Map.Entry<K, Collection<V>>> prefix = this.keys.trySplit();
+            if (prefix == null) {
+                return null;
+            }
+            this.estimatedSize >>>= 1;
+            return new FlatSpliterator<>(prefix, this.mapper, this.estimatedSize);
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimatedSize;
+        }
+
+        @Override
+        public int characteristics() {
+            return 0;
+        }
+    }
+
+    /**
+     * Protected rather than private, so that serialization finds it on the subclasses, in any package, and writes
+     * the proxy instead of the backing map. A subclass with more state to keep overrides it with its own proxy.
+     */
+    protected Object writeReplace() {
+        return new SerializationProxy<>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /**
+     * Item 90: serialization proxy writing the flat {@link CollectionsCodec} records.
+     */
+    private static class SerializationProxy<K, V> implements Serializable {
+        private static final long serialVersionUID = -2967081580622178318L;
+
+        @SuppressWarnings("rawtypes")
+        private final Class<? extends Multimap> type;
+        private transient Multimap<K, V> multimap;
+
+        SerializationProxy(final Multimap<K, V> multimap) {
+            this.type = multimap.getClass();
+            this.multimap = multimap;
+        }
+
+        private void writeObject(ObjectOutputStream stream) throws IOException {
+            stream.defaultWriteObject();
+            CollectionsCodec.encodeMultimap(this.multimap, stream);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+            stream.defaultReadObject();
+            if (!Multimap.class.isAssignableFrom(this.type)) {
+                throw new InvalidObjectException("Not a multimap: " + this.type.getName());
+            }
+            try {
+                this.multimap = this.type.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new InvalidObjectException("Cannot create " + this.type.getName() + ": " + e);
+            }
+            CollectionsCodec.decodeMultimap(stream, this.multimap::put);
+        }
+
+        private Object readResolve() {
+            return this.multimap;
+        }
     }
 }
@@ -0,0 +1,82 @@
+package io.costax.diy.collections;
+
+import java.util.EmptyStackException;
+
+/**
+ * Stack whose {@link #snapshot()} and {@link #clone()} are O(1), for interpreters that save their stack before
+ * every backtracking point.
+ * <p>
+ * The elements are an immutable linked list (every node is final): a push links a new node on top of the current
+ * one and a pop moves to the next node, so a copy only has to share the top node and the size, instead of copying
+ * the whole array like {@code io.costax.item13.entity.Stack#clone()}. The copies are independent, pushing to or
+ * popping from one of them never changes what the others see, and they share all the nodes they have in common.
+ * <p>
+ * Push and pop are O(1) but allocate a node per push; a popped node is released as soon as no snapshot refers to
+ * it.
+ */
+public class PersistentStack<E> implements Cloneable {
+
+    private Node<E> top;
+    private int size = 0;
+
+    public void push(final E e) {
+        this.top = new Node<>(e, this.top);
+        this.size++;
+    }
+
+    public E pop() {
+        final Node<E> node = this.top;
+        if (node == null) {
+            throw new EmptyStackException();
+        }
+        this.top = node.next;
+        this.size--;
+        return node.element;
+    }
+
+    public E peek() {
+        if (this.top == null) {
+            throw new EmptyStackException();
+        }
+        return this.top.element;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return an independent copy of this stack, in O(1).
+     */
+    public PersistentStack<E> snapshot() {
+        return this.clone();
+    }
+
+    /**
+     * Unlike an array based stack, the nodes are immutable, so the shallow copy of {@link Object#clone()} is
+     * already a deep enough copy (Item 13).
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public PersistentStack<E> clone() {
+        try {
+            return (PersistentStack<E>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError();
+        }
+    }
+
+    private static final class Node<E> {
+        final E element;
+        final Node<E> next;
+
+        Node(final E element, final Node<E> next) {
+            this.element = element;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.costax.diy.collections;
+
+import java.util.ArrayDeque;
+import java.util.EmptyStackException;
+
+/**
+ * Stack of fixed-size segments that never copies on growth, for stacks of millions of elements.
+ * <p>
+ * An array stack doubles and copies its whole array when full, which is a latency spike proportional to its size,
+ * and its large arrays are humongous allocations for G1. Here a full segment is linked to a new segment of
+ * {@value #SEGMENT_SIZE} references, so the worst case push is the allocation of one small segment, and no
+ * element is ever moved.
+ * <p>
+ * The segments are recycled: when a pop empties a segment, it is kept as a spare, so a stack oscillating around a
+ * segment boundary does not allocate, and the previous spare goes to a small per thread pool that the next
+ * growing stack of the same thread takes its segments from. Popped slots are nulled (Item 7), so a pooled segment
+ * holds no reference.
+ */
+public class SegmentedStack<E> {
+
+    static final int SEGMENT_SIZE = 1024;
+    private static final int MAX_POOLED_SEGMENTS = 4;
+    private static final ThreadLocal<ArrayDeque<Segment>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private Segment current = acquire();
+    private Segment spare;
+    private int index = 0;
+    private int size = 0;
+
+    public void push(final E e) {
+        if (this.index == SEGMENT_SIZE) {
+            final Segment next = this.spare != null ? this.spare : acquire();
+            this.spare = null;
+            next.previous = this.current;
+            this.current = next;
+            this.index = 0;
+        }
+        this.current.elements[this.index++] = e;
+        this.size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E pop() {
+        if (this.size == 0) {
+            throw new EmptyStackException();
+        }
+        if (this.index == 0) {
+            this.moveToPrevious();
+        }
+        final E result = (E) this.current.elements[--this.index];
+        this.current.elements[this.index] = null; // eliminate obsolete references
+        this.size--;
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        if (this.size == 0) {
+            throw new EmptyStackException();
+        }
+        if (this.index == 0) {
+            this.moveToPrevious();
+        }
+        return (E) this.current.elements[this.index - 1];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Removes all the elements and returns the segments to the pool.
+     */
+    public void clear() {
+        while (this.current.previous != null) {
+            final Segment previous = this.current.previous;
+            this.clearAndRelease(this.current, this.index);
+            this.current = previous;
+            this.index = SEGMENT_SIZE;
+        }
+        for (int i = 0; i < this.index; i++) {
+            this.current.elements[i] = null;
+        }
+        this.index = 0;
+        this.size = 0;
+        this.trimToSize();
+    }
+
+    /**
+     * Returns the spare segment to the pool.
+     */
+    public void trimToSize() {
+        if (this.spare != null) {
+            release(this.spare);
+            this.spare = null;
+        }
+    }
+
+    /**
+     * The current segment is empty: keeps it as the spare and continues with the previous one.
+     */
+    private void moveToPrevious() {
+        if (this.spare != null) {
+            release(this.spare);
+        }
+        this.spare = this.current;
+        this.current = this.current.previous;
+        this.spare.previous = null;
+        this.index = SEGMENT_SIZE;
+    }
+
+    private void clearAndRelease(final Segment segment, final int used) {
+        for (int i = 0; i < used; i++) {
+            segment.elements[i] = null;
+        }
+        release(segment);
+    }
+
+    private static Segment acquire() {
+        final Segment pooled = POOL.get().poll();
+        return pooled != null ? pooled : new Segment();
+    }
+
+    private static void release(final Segment segment) {
+        segment.previous = null;
+        final ArrayDeque<Segment> pool = POOL.get();
+        if (pool.size() < MAX_POOLED_SEGMENTS) {
+            pool.push(segment);
+        }
+    }
+
+    private static final class Segment {
+        final Object[] elements = new Object[SEGMENT_SIZE];
+        Segment previous;
+    }
+}
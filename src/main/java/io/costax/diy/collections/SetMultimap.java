@@ -1,10 +1,49 @@
 package io.costax.diy.collections;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collector;
 
+/**
+ * {@link Multimap} whose values are a {@link java.util.Set} per key.
+ * <p>
+ * It can also answer "which keys contain value V" in O(1) average with an optional inverse index: the first call
+ * to {@link #inverse()} builds a {@code SetMultimap<V, K>} with a single scan, and from then on both sides are
+ * kept in sync incrementally by {@code put}, both {@code putAll}, {@code remove} and {@code removeAll}, on either side.
+ * Multimaps that never ask for the inverse do not pay for it. The extra memory is reported by
+ * {@link #inverseIndexFootprint()}.
+ * <p>
+ * The collections returned by {@link #get(Object)} are read-only, so the index sees every change.
+ * <p>
+ * The serialized form records whether the index was built, and a deserialized multimap rebuilds it.
+ */
 public class SetMultimap<K, V> extends Multimap<K, V> {
 
+    private static final long serialVersionUID = 5267831866643488763L;
+
+    /**
+     * Estimated bytes of a distinct value of the inverse index, with compressed references and the default load
+     * factor: its node (32) and table slot (6) in the inverse map, its read-only view (16), its {@code HashSet} (16)
+     * and the {@code HashMap} of that set (48) with the header of its table (16).
+     */
+    private static final long INVERSE_VALUE_BYTES = 32 + 6 + 16 + 16 + 48 + 16;
+
+    /**
+     * Estimated bytes of a key value pair of the inverse index: the node (32) and the table slot (6) of the key in
+     * the set of the value.
+     */
+    private static final long INVERSE_PAIR_BYTES = 32 + 6;
+
+    private SetMultimap<V, K> inverse;
+
     public SetMultimap() {
     }
 
@@ -12,4 +51,179 @@ public class SetMultimap<K, V> extends Multimap<K, V> {
     protected Collection<V> getEmptyBackingCollection() {
         return new HashSet<>();
     }
+
+    /**
+     * Like {@link Multimap#toMultimap(Function, Function, java.util.function.Supplier)}, but sets have no encounter
+     * order to keep, so the smaller partial multimap is always merged into the larger one.
+     */
+    public static <T, K, V> Collector<T, ?, SetMultimap<K, V>> toSetMultimap(
+            final Function<? super T, ? extends K> keyMapper,
+            final Function<? super T, ? extends V> valueMapper) {
+        return Collector.of(
+                SetMultimap::new,
+                (multimap, element) -> multimap.put(keyMapper.apply(element), valueMapper.apply(element)),
+                (left, right) -> {
+                    if (left.backingMap.size() < right.backingMap.size()) {
+                        right.putAll(left.backingMap);
+                        return right;
+                    }
+                    left.putAll(right.backingMap);
+                    return left;
+                },
+                Collector.Characteristics.UNORDERED);
+    }
+
+    @Override
+    protected Collection<V> getEmptyBackingCollection(final int expectedSize) {
+        return new HashSet<>(Math.max((int) (expectedSize / .75f) + 1, 16));
+    }
+
+    @Override
+    protected Collection<V> getEmptyView() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @return the live inverse view: value to the keys that contain it. Changes on either side are reflected on
+     * the other one, and {@code inverse().inverse()} is this multimap.
+     */
+    public SetMultimap<V, K> inverse() {
+        if (this.inverse == null) {
+            final SetMultimap<V, K> index = new SetMultimap<>();
+            for (final Map.Entry<K, Collection<V>> entry : this.backingMap.entrySet()) {
+                for (final V value : entry.getValue()) {
+                    index.putDirect(value, entry.getKey());
+                }
+            }
+            index.inverse = this;
+            this.inverse = index;
+        }
+        return this.inverse;
+    }
+
+    /**
+     * Estimated extra heap used by the inverse index, 0 if it was never built. The inverse holds a pair for each
+     * pair of this multimap, so the estimate is computed in O(1) from the number of distinct values and the size.
+     */
+    public long inverseIndexFootprint() {
+        if (this.inverse == null) {
+            return 0;
+        }
+        return INVERSE_VALUE_BYTES * this.inverse.backingMap.size() + INVERSE_PAIR_BYTES * this.size();
+    }
+
+    @Override
+    public boolean put(final K key, final V value) {
+        final boolean added = this.putDirect(key, value);
+        if (added && this.inverse != null) {
+            this.inverse.putDirect(value, key);
+        }
+        return added;
+    }
+
+    @Override
+    public Collection<V> putAll(final K key, final Iterable<V> values) {
+        if (this.inverse == null) {
+            return super.putAll(key, values);
+        }
+        for (final V value : values) {
+            this.put(key, value);
+        }
+        return this.get(key);
+    }
+
+    @Override
+    public void putAll(final Map<? extends K, ? extends Collection<? extends V>> map) {
+        if (this.inverse == null) {
+            super.putAll(map);
+            return;
+        }
+        for (final Map.Entry<? extends K, ? extends Collection<? extends V>> entry : map.entrySet()) {
+            for (final V value : entry.getValue()) {
+                this.put(entry.getKey(), value);
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(final K key, final V value) {
+        final boolean removed = this.removeDirect(key, value);
+        if (removed && this.inverse != null) {
+            this.inverse.removeDirect(value, key);
+        }
+        return removed;
+    }
+
+    @Override
+    public Collection<V> removeAll(final K key) {
+        final Collection<V> removed = super.removeAll(key);
+        if (removed != null && this.inverse != null) {
+            for (final V value : removed) {
+                this.inverse.removeDirect(value, key);
+            }
+        }
+        return removed;
+    }
+
+    private boolean putDirect(final K key, final V value) {
+        return super.put(key, value);
+    }
+
+    private boolean removeDirect(final K key, final V value) {
+        return super.remove(key, value);
+    }
+
+    @Override
+    protected Object writeReplace() {
+        return new SerializationProxy<>(this);
+    }
+
+    private void readObject(ObjectInputStream stream) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+
+    /**
+     * Item 90: serialization proxy with the concrete class and whether the inverse index was built, followed by the
+     * {@link CollectionsCodec} records.
+     */
+    private static class SerializationProxy<K, V> implements Serializable {
+        private static final long serialVersionUID = 7315482600394871522L;
+
+        @SuppressWarnings("rawtypes")
+        private final Class<? extends SetMultimap> type;
+        private final boolean indexed;
+        private transient SetMultimap<K, V> multimap;
+
+        SerializationProxy(final SetMultimap<K, V> multimap) {
+            this.type = multimap.getClass();
+            this.indexed = multimap.inverse != null;
+            this.multimap = multimap;
+        }
+
+        private void writeObject(ObjectOutputStream stream) throws IOException {
+            stream.defaultWriteObject();
+            CollectionsCodec.encodeMultimap(this.multimap, stream);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+            stream.defaultReadObject();
+            if (!SetMultimap.class.isAssignableFrom(this.type)) {
+                throw new InvalidObjectException("Not a set multimap: " + this.type.getName());
+            }
+            try {
+                this.multimap = this.type.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new InvalidObjectException("Cannot create " + this.type.getName() + ": " + e);
+            }
+            CollectionsCodec.decodeMultimap(stream, this.multimap::putDirect);
+            if (this.indexed) {
+                this.multimap.inverse();
+            }
+        }
+
+        private Object readResolve() {
+            return this.multimap;
+        }
+    }
 }
@@ -0,0 +1,300 @@
+package io.costax.diy.collections;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * {@link Bag} whose elements are kept sorted, with range count queries.
+ * <p>
+ * The counts are stored in an order statistics tree: an AVL tree where every node also keeps the total number of
+ * occurrences of its subtree. Any prefix count, and so {@link #headCount(Object)}, {@link #tailCount(Object)},
+ * {@link #countInRange(Object, Object)} and {@link #rank(Object)}, is the sum of the subtrees on the left of a
+ * single root to leaf path, O(log n) with n the number of distinct elements. {@link #select(int)} walks the same
+ * path driven by the subtree totals.
+ * <p>
+ * The ranges follow the {@link java.util.SortedSet} conventions: the lower bound is inclusive and the upper bound
+ * exclusive. Null elements are not permitted.
+ */
+public class SortedBag<T> {
+
+    private final Comparator<? super T> comparator;
+    private Node<T> root;
+    private int sizeDistinct = 0;
+
+    /**
+     * Sorts the elements by their natural ordering.
+     */
+    @SuppressWarnings("unchecked")
+    public SortedBag() {
+        this((Comparator<? super T>) Comparator.naturalOrder());
+    }
+
+    public SortedBag(final Comparator<? super T> comparator) {
+        this.comparator = Objects.requireNonNull(comparator);
+    }
+
+    public int getOccurrences(final T element) {
+        Node<T> node = this.root;
+        while (node != null) {
+            final int cmp = this.comparator.compare(element, node.element);
+            if (cmp == 0) {
+                return node.count;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return total(this.root);
+    }
+
+    public int sizeDistinct() {
+        return this.sizeDistinct;
+    }
+
+    /**
+     * @return the count of the element after the addition.
+     */
+    public int addOccurrences(final T element, final int occurrences) {
+        Objects.requireNonNull(element);
+        if (occurrences < 0) {
+            throw new IllegalArgumentException("Cannot add a negative number of occurrences: " + occurrences);
+        }
+        if (occurrences == 0) {
+            return this.getOccurrences(element);
+        }
+        this.root = this.add(this.root, element, occurrences);
+        return this.getOccurrences(element);
+    }
+
+    public int addOccurrence(final T element) {
+        return this.addOccurrences(element, 1);
+    }
+
+    public boolean removeOccurrence(final T element) {
+        return this.removeOccurrences(element, 1);
+    }
+
+    public boolean removeOccurrences(final T element, final int occurrences) {
+        if (this.getOccurrences(element) == 0) {
+            return false;
+        }
+        this.root = this.remove(this.root, element, occurrences);
+        return true;
+    }
+
+    /**
+     * @return the number of occurrences of the elements lower than {@code to}.
+     */
+    public int headCount(final T to) {
+        int count = 0;
+        Node<T> node = this.root;
+        while (node != null) {
+            if (this.comparator.compare(to, node.element) <= 0) {
+                node = node.left;
+            } else {
+                count += total(node.left) + node.count;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of occurrences of the elements greater than or equal to {@code from}.
+     */
+    public int tailCount(final T from) {
+        return this.size() - this.headCount(from);
+    }
+
+    /**
+     * @return the number of occurrences of the elements from {@code from}, inclusive, to {@code to}, exclusive.
+     */
+    public int countInRange(final T from, final T to) {
+        if (this.comparator.compare(from, to) > 0) {
+            throw new IllegalArgumentException("from is greater than to");
+        }
+        return this.headCount(to) - this.headCount(from);
+    }
+
+    /**
+     * @return the number of occurrences lower than the element, which is the index of its first occurrence
+     * if the occurrences were laid out in order.
+     */
+    public int rank(final T element) {
+        return this.headCount(element);
+    }
+
+    /**
+     * @return the element of the occurrence at the given index, if the occurrences were laid out in order.
+     * @throws NoSuchElementException if the index is negative or not lower than {@link #size()}.
+     */
+    public T select(int index) {
+        if (index < 0 || index >= this.size()) {
+            throw new NoSuchElementException("No occurrence at index " + index);
+        }
+        Node<T> node = this.root;
+        for (; ; ) {
+            final int left = total(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index < left + node.count) {
+                return node.element;
+            } else {
+                index -= left + node.count;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Visits the elements in order.
+     */
+    public void forEachWithOccurrences(BiConsumer<T, Integer> biConsumer) {
+        forEachInOrder(this.root, biConsumer);
+    }
+
+    /**
+     * Visits the occurrences in order.
+     */
+    public void forEach(Consumer<T> consumer) {
+        forEachInOrder(this.root, (element, count) -> {
+            for (int i = 0; i < count; i++) {
+                consumer.accept(element);
+            }
+        });
+    }
+
+    private Node<T> add(final Node<T> node, final T element, final int occurrences) {
+        if (node == null) {
+            this.sizeDistinct++;
+            return new Node<>(element, occurrences);
+        }
+
+        final int cmp = this.comparator.compare(element, node.element);
+        if (cmp < 0) {
+            node.left = this.add(node.left, element, occurrences);
+        } else if (cmp > 0) {
+            node.right = this.add(node.right, element, occurrences);
+        } else {
+            node.count += occurrences;
+            node.update();
+            return node;
+        }
+        return balance(node);
+    }
+
+    private Node<T> remove(final Node<T> node, final T element, final int occurrences) {
+        final int cmp = this.comparator.compare(element, node.element);
+        if (cmp < 0) {
+            node.left = this.remove(node.left, element, occurrences);
+        } else if (cmp > 0) {
+            node.right = this.remove(node.right, element, occurrences);
+        } else if (node.count > occurrences) {
+            node.count -= occurrences;
+            node.update();
+            return node;
+        } else {
+            this.sizeDistinct--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // replace the node by its successor
+            Node<T> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private static <T> Node<T> removeMin(final Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private static <T> Node<T> balance(final Node<T> node) {
+        node.update();
+        final int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <T> Node<T> rotateRight(final Node<T> node) {
+        final Node<T> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static <T> Node<T> rotateLeft(final Node<T> node) {
+        final Node<T> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    private static <T> void forEachInOrder(final Node<T> node, final BiConsumer<T, Integer> biConsumer) {
+        if (node != null) {
+            forEachInOrder(node.left, biConsumer);
+            biConsumer.accept(node.element, node.count);
+            forEachInOrder(node.right, biConsumer);
+        }
+    }
+
+    private static int height(final Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int total(final Node<?> node) {
+        return node == null ? 0 : node.total;
+    }
+
+    private static final class Node<T> {
+        final T element;
+        int count;
+        int total;
+        int height = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(final T element, final int count) {
+            this.element = element;
+            this.count = count;
+            this.total = count;
+        }
+
+        void update() {
+            this.height = 1 + Math.max(height(this.left), height(this.right));
+            this.total = this.count + total(this.left) + total(this.right);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.costax.diy.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.List;
+
+/**
+ * Generic array stack, the successor of {@code io.costax.item13.entity.Stack}, with {@link #peek()},
+ * {@link #size()}, bulk {@link #pushAll(Object[])} and {@link #popN(int)}, a configurable growth factor and
+ * {@link #trimToSize()}.
+ * <p>
+ * Item 7: a popped slot is nulled, so the stack never keeps obsolete references to the elements.
+ *
+ * @see IntStack
+ * @see LongStack
+ * @see DoubleStack
+ */
+public class Stack<E> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+    private static final float DEFAULT_GROWTH_FACTOR = 2.0f;
+
+    private final float growthFactor;
+    private Object[] elements;
+    private int size = 0;
+
+    public Stack() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_GROWTH_FACTOR);
+    }
+
+    /**
+     * @param growthFactor the capacity is multiplied by it when the stack is full, must be greater than 1.
+     */
+    public Stack(final int initialCapacity, final float growthFactor) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("The initial capacity cannot be negative: " + initialCapacity);
+        }
+        if (!(growthFactor > 1.0f)) {
+            throw new IllegalArgumentException("The growth factor must be greater than 1: " + growthFactor);
+        }
+        this.growthFactor = growthFactor;
+        this.elements = new Object[initialCapacity];
+    }
+
+    public void push(final E e) {
+        this.ensureCapacity(this.size + 1);
+        this.elements[this.size++] = e;
+    }
+
+    /**
+     * Pushes the elements in order, the last one ends on the top.
+     */
+    @SafeVarargs
+    public final void pushAll(final E... elements) {
+        this.ensureCapacity(this.size + elements.length);
+        System.arraycopy(elements, 0, this.elements, this.size, elements.length);
+        this.size += elements.length;
+    }
+
+    public void pushAll(final Iterable<? extends E> elements) {
+        for (final E e : elements) {
+            this.push(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E pop() {
+        if (this.size == 0) {
+            throw new EmptyStackException();
+        }
+        final E result = (E) this.elements[--this.size];
+        this.elements[this.size] = null; // eliminate obsolete references
+        return result;
+    }
+
+    /**
+     * @return the {@code n} top elements, in pop order.
+     * @throws EmptyStackException if the stack has less than {@code n} elements.
+     */
+    public List<E> popN(final int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Cannot pop a negative number of elements: " + n);
+        }
+        if (n > this.size) {
+            throw new EmptyStackException();
+        }
+        final List<E> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(this.pop());
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        if (this.size == 0) {
+            throw new EmptyStackException();
+        }
+        return (E) this.elements[this.size - 1];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int capacity() {
+        return this.elements.length;
+    }
+
+    public void clear() {
+        Arrays.fill(this.elements, 0, this.size, null);
+        this.size = 0;
+    }
+
+    /**
+     * Shrinks the capacity to the current size.
+     */
+    public void trimToSize() {
+        if (this.elements.length > this.size) {
+            this.elements = Arrays.copyOf(this.elements, this.size);
+        }
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required > this.elements.length) {
+            final int grown = (int) Math.min(Integer.MAX_VALUE - 8, (long) (this.elements.length * (double) this.growthFactor) + 1);
+            this.elements = Arrays.copyOf(this.elements, Math.max(required, grown));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package io.costax.diy.collections;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * {@link Bag} of the occurrences added during the last {@code window}, e.g. requests per client in the last
+ * minute.
+ * <p>
+ * The window is divided in {@code slices} time slices, each one counted in its own {@link Bag} kept in a ring,
+ * and a {@code total} bag holds the sum of the slices. An addition updates the current slice and the total,
+ * so {@link #getOccurrences(Object)} is a single lookup in the total. When the clock moves to the next slice, the
+ * ring advances by one position (O(1)) and the slice that falls out of the window is subtracted from the total
+ * with {@link Bag#removeAll(Bag)}: the cost of an expiration is the number of distinct elements of that slice, the
+ * whole bag is never rescanned.
+ * <p>
+ * The window slides by whole slices, so the count covers between {@code window - window / slices} and
+ * {@code window} of history.
+ */
+public class WindowedBag<T> {
+
+    private final Clock clock;
+    private final long sliceMillis;
+    private final Bag<T>[] slices;
+    private final Bag<T> total = new Bag<>();
+    private long currentSlice;
+
+    public WindowedBag(final Duration window, final int slices) {
+        this(window, slices, Clock.systemUTC());
+    }
+
+    public WindowedBag(final Duration window, final int slices, final Clock clock) {
+        if (slices <= 0) {
+            throw new IllegalArgumentException("The number of slices must be positive: " + slices);
+        }
+        if (window.toMillis() < slices) {
+            throw new IllegalArgumentException("The window must be at least one millisecond per slice: " + window);
+        }
+
+        this.clock = Objects.requireNonNull(clock);
+        this.sliceMillis = window.toMillis() / slices;
+        @SuppressWarnings("unchecked")
+        final Bag<T>[] ring = (Bag<T>[]) new Bag<?>[slices];
+        for (int i = 0; i < slices; i++) {
+            ring[i] = new Bag<>();
+        }
+        this.slices = ring;
+        this.currentSlice = this.clock.millis() / this.sliceMillis;
+    }
+
+    /**
+     * @return the occurrences of the element in the window.
+     */
+    public int getOccurrences(final T element) {
+        this.rotate();
+        return this.total.getOccurrences(element);
+    }
+
+    /**
+     * @return the occurrences of all the elements in the window.
+     */
+    public int size() {
+        this.rotate();
+        return this.total.size();
+    }
+
+    public int sizeDistinct() {
+        this.rotate();
+        return this.total.sizeDistinct();
+    }
+
+    /**
+     * @return the occurrences of the element in the window, after the addition.
+     */
+    public int addOccurrences(final T element, final int occurrences) {
+        this.rotate();
+        this.slices[this.indexOf(this.currentSlice)].addOccurrences(element, occurrences);
+        return this.total.addOccurrences(element, occurrences);
+    }
+
+    public int addOccurrence(final T element) {
+        return this.addOccurrences(element, 1);
+    }
+
+    /**
+     * @see Bag#topOccurrences(int)
+     */
+    public List<Map.Entry<T, Integer>> topOccurrences(final int k) {
+        this.rotate();
+        return this.total.topOccurrences(k);
+    }
+
+    public void forEachWithIntOccurrences(final ObjIntConsumer<? super T> consumer) {
+        this.rotate();
+        this.total.forEachWithIntOccurrences(consumer);
+    }
+
+    /**
+     * Expires the slices that left the window since the last call.
+     */
+    private void rotate() {
+        final long now = this.clock.millis() / this.sliceMillis;
+        if (now <= this.currentSlice) {
+            return;
+        }
+
+        if (now - this.currentSlice >= this.slices.length) {
+            // the whole window expired: nothing to subtract
+            for (final Bag<T> slice : this.slices) {
+                slice.clear();
+            }
+            this.total.clear();
+        } else {
+            for (long slice = this.currentSlice + 1; slice <= now; slice++) {
+                final Bag<T> expired = this.slices[this.indexOf(slice)];
+                this.total.removeAll(expired);
+                // the slices are reused, the ring does not allocate as it turns
+                expired.clear();
+            }
+        }
+        this.currentSlice = now;
+    }
+
+    private int indexOf(final long slice) {
+        return (int) Math.floorMod(slice, (long) this.slices.length);
+    }
+}
@@ -0,0 +1,113 @@
+package io.costax.item17.minimizemutability;
+
+/**
+ * Mutable companion of {@link ComplexNumber}, as {@code StringBuilder} is the mutable companion of {@code String}.
+ * <p>
+ * Item 17: the only real disadvantage of immutable classes is that they require a separate object for each
+ * distinct value, so a multistep operation such as a sum of products allocates an object per step. The
+ * accumulator performs the same arithmetic in place, a hot loop allocates nothing, and the result is turned back
+ * into the immutable value type with {@link #toComplexNumber()} once the loop is done.
+ * <p>
+ * Every operation returns this accumulator, so that they can be chained.
+ */
+public final class ComplexAccumulator {
+
+    private double re;
+    private double im;
+
+    public ComplexAccumulator() {
+    }
+
+    public ComplexAccumulator(final double re, final double im) {
+        this.re = re;
+        this.im = im;
+    }
+
+    public ComplexAccumulator(final ComplexNumber c) {
+        this(c.realPart(), c.imaginaryPart());
+    }
+
+    public double realPart() {
+        return re;
+    }
+
+    public double imaginaryPart() {
+        return im;
+    }
+
+    public ComplexAccumulator set(final double re, final double im) {
+        this.re = re;
+        this.im = im;
+        return this;
+    }
+
+    public ComplexAccumulator set(final ComplexNumber c) {
+        return set(c.realPart(), c.imaginaryPart());
+    }
+
+    public ComplexAccumulator plus(final double re, final double im) {
+        this.re += re;
+        this.im += im;
+        return this;
+    }
+
+    public ComplexAccumulator plus(final ComplexNumber c) {
+        return plus(c.realPart(), c.imaginaryPart());
+    }
+
+    public ComplexAccumulator minus(final double re, final double im) {
+        this.re -= re;
+        this.im -= im;
+        return this;
+    }
+
+    public ComplexAccumulator minus(final ComplexNumber c) {
+        return minus(c.realPart(), c.imaginaryPart());
+    }
+
+    public ComplexAccumulator times(final double re, final double im) {
+        final double newRe = this.re * re - this.im * im;
+        this.im = this.re * im + this.im * re;
+        this.re = newRe;
+        return this;
+    }
+
+    public ComplexAccumulator times(final ComplexNumber c) {
+        return times(c.realPart(), c.imaginaryPart());
+    }
+
+    public ComplexAccumulator dividedBy(final double re, final double im) {
+        final double tmp = re * re + im * im;
+        final double newRe = (this.re * re + this.im * im) / tmp;
+        this.im = (this.im * re - this.re * im) / tmp;
+        this.re = newRe;
+        return this;
+    }
+
+    public ComplexAccumulator dividedBy(final ComplexNumber c) {
+        return dividedBy(c.realPart(), c.imaginaryPart());
+    }
+
+    public ComplexAccumulator scale(final double factor) {
+        this.re *= factor;
+        this.im *= factor;
+        return this;
+    }
+
+    public ComplexAccumulator conjugate() {
+        this.im = -this.im;
+        return this;
+    }
+
+    /**
+     * @return the current value, as the immutable public value type.
+     */
+    public ComplexNumber toComplexNumber() {
+        return ComplexNumber.valueOf(re, im);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + re + " + " + im + "i)";
+    }
+}
@@ -0,0 +1,140 @@
+package io.costax.item17.minimizemutability;
+
+import java.util.Objects;
+
+/**
+ * Fixed length vector of complex numbers for signal processing code, stored as interleaved {@code re, im} pairs
+ * in a single {@code double[]}.
+ * <p>
+ * An array of {@link ComplexNumber} is an array of references to objects scattered on the heap, with an object
+ * header per element, and every operation on it allocates new elements. Here the values are contiguous, and the
+ * bulk operations ({@link #add}, {@link #multiply}, {@link #scale}, {@link #conjugate}) update a range
+ * {@code [from, to)} in place without allocating. {@link #get(int, ComplexAccumulator)} reads an element into a
+ * {@link ComplexAccumulator} for the same reason; {@link #get(int)} returns the immutable value type.
+ */
+public final class ComplexArray {
+
+    private final double[] data;
+
+    public ComplexArray(final int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("The length cannot be negative: " + length);
+        }
+        this.data = new double[length * 2];
+    }
+
+    public static ComplexArray of(final ComplexNumber... values) {
+        final ComplexArray array = new ComplexArray(values.length);
+        for (int i = 0; i < values.length; i++) {
+            array.set(i, values[i]);
+        }
+        return array;
+    }
+
+    public int length() {
+        return data.length >> 1;
+    }
+
+    public double realPart(final int index) {
+        return data[2 * Objects.checkIndex(index, length())];
+    }
+
+    public double imaginaryPart(final int index) {
+        return data[2 * Objects.checkIndex(index, length()) + 1];
+    }
+
+    public ComplexNumber get(final int index) {
+        return ComplexNumber.valueOf(realPart(index), imaginaryPart(index));
+    }
+
+    /**
+     * Reads the element into the accumulator, without allocating.
+     *
+     * @return the accumulator
+     */
+    public ComplexAccumulator get(final int index, final ComplexAccumulator into) {
+        return into.set(realPart(index), imaginaryPart(index));
+    }
+
+    public void set(final int index, final double re, final double im) {
+        final int at = 2 * Objects.checkIndex(index, length());
+        data[at] = re;
+        data[at + 1] = im;
+    }
+
+    public void set(final int index, final ComplexNumber c) {
+        set(index, c.realPart(), c.imaginaryPart());
+    }
+
+    public void set(final int index, final ComplexAccumulator c) {
+        set(index, c.realPart(), c.imaginaryPart());
+    }
+
+    /**
+     * {@code this[i] += other[i]} for every {@code i} of {@code [from, to)}.
+     */
+    public void add(final ComplexArray other, final int from, final int to) {
+        checkRange(other, from, to);
+        final double[] o = other.data;
+        for (int i = 2 * from, end = 2 * to; i < end; i++) {
+            data[i] += o[i];
+        }
+    }
+
+    /**
+     * {@code this[i] *= other[i]} for every {@code i} of {@code [from, to)}. {@code other} can be this array.
+     */
+    public void multiply(final ComplexArray other, final int from, final int to) {
+        checkRange(other, from, to);
+        final double[] o = other.data;
+        for (int i = 2 * from, end = 2 * to; i < end; i += 2) {
+            // both operands are read before the first store, o is data when squaring
+            final double re = data[i];
+            final double im = data[i + 1];
+            final double oRe = o[i];
+            final double oIm = o[i + 1];
+            data[i] = re * oRe - im * oIm;
+            data[i + 1] = re * oIm + im * oRe;
+        }
+    }
+
+    /**
+     * {@code this[i] *= c} for every {@code i} of {@code [from, to)}.
+     */
+    public void multiply(final ComplexNumber c, final int from, final int to) {
+        Objects.checkFromToIndex(from, to, length());
+        final double cRe = c.realPart();
+        final double cIm = c.imaginaryPart();
+        for (int i = 2 * from, end = 2 * to; i < end; i += 2) {
+            final double re = data[i];
+            final double im = data[i + 1];
+            data[i] = re * cRe - im * cIm;
+            data[i + 1] = re * cIm + im * cRe;
+        }
+    }
+
+    /**
+     * {@code this[i] *= factor} for every {@code i} of {@code [from, to)}.
+     */
+    public void scale(final double factor, final int from, final int to) {
+        Objects.checkFromToIndex(from, to, length());
+        for (int i = 2 * from, end = 2 * to; i < end; i++) {
+            data[i] *= factor;
+        }
+    }
+
+    /**
+     * Replaces every element of {@code [from, to)} by its conjugate.
+     */
+    public void conjugate(final int from, final int to) {
+        Objects.checkFromToIndex(from, to, length());
+        for (int i = 2 * from + 1, end = 2 * to; i < end; i += 2) {
+            data[i] = -data[i];
+        }
+    }
+
+    private void checkRange(final ComplexArray other, final int from, final int to) {
+        Objects.checkFromToIndex(from, to, length());
+        Objects.checkFromToIndex(from, to, other.length());
+    }
+}
@@ -0,0 +1,73 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+class BagMultimapTest {
+
+    @Test
+    public void addAndCount() {
+        BagMultimap<String, String> bagMultimap = new BagMultimap<>();
+        bagMultimap.put("user-1", "login");
+        Assertions.assertEquals(1_001, bagMultimap.addOccurrences("user-1", "login", 1_000));
+        bagMultimap.addOccurrences("user-1", "logout", 3);
+        bagMultimap.addOccurrences("user-2", "login", 0);
+
+        Assertions.assertEquals(1_001, bagMultimap.count("user-1", "login"));
+        Assertions.assertEquals(0, bagMultimap.count("user-2", "login"));
+        Assertions.assertEquals(1_004, bagMultimap.size());
+        Assertions.assertEquals(Set.of("user-1"), bagMultimap.keySet());
+        Assertions.assertEquals(2, bagMultimap.get("user-1").sizeDistinct());
+        Assertions.assertEquals(1_004, bagMultimap.get("user-1").size());
+        Assertions.assertTrue(bagMultimap.get("user-2").isEmpty());
+        Assertions.assertEquals(0, bagMultimap.get("user-2").getOccurrences("login"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bagMultimap.addOccurrences("user-1", "login", -1));
+
+        Map<String, Integer> counts = new HashMap<>();
+        bagMultimap.forEach("user-1", counts::put);
+        Assertions.assertEquals(Map.of("login", 1_001, "logout", 3), counts);
+    }
+
+    @Test
+    public void remove() {
+        BagMultimap<String, String> bagMultimap = new BagMultimap<>();
+        bagMultimap.addOccurrences("user-1", "login", 5);
+        bagMultimap.addOccurrences("user-2", "login", 2);
+
+        Assertions.assertTrue(bagMultimap.removeOccurrences("user-1", "login", 3));
+        Assertions.assertEquals(2, bagMultimap.count("user-1", "login"));
+        Assertions.assertTrue(bagMultimap.remove("user-1", "login"));
+        Assertions.assertTrue(bagMultimap.removeOccurrences("user-1", "login", 10));
+        Assertions.assertFalse(bagMultimap.containsKey("user-1"));
+        Assertions.assertFalse(bagMultimap.remove("user-1", "login"));
+
+        Assertions.assertEquals(2, bagMultimap.removeAll("user-2").size());
+        Assertions.assertNull(bagMultimap.removeAll("user-2"));
+        Assertions.assertTrue(bagMultimap.isEmpty());
+    }
+
+    @Test
+    public void manyValuesPerKey() {
+        BagMultimap<String, Integer> bagMultimap = new BagMultimap<>();
+        for (int i = 0; i < 1_000; i++) {
+            bagMultimap.addOccurrences("user-1", i % 100, 1);
+        }
+        bagMultimap.put("user-1", null);
+        for (int i = 0; i < 100; i += 2) {
+            Assertions.assertTrue(bagMultimap.removeOccurrences("user-1", i, 10));
+        }
+
+        BagMultimap.ValueCounts<Integer> values = bagMultimap.get("user-1");
+        Assertions.assertEquals(51, values.sizeDistinct());
+        Assertions.assertEquals(501, values.size());
+        Assertions.assertEquals(501, bagMultimap.size());
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i % 2 == 0 ? 0 : 10, values.getOccurrences(i));
+        }
+        Assertions.assertEquals(1, values.getOccurrences(null));
+    }
+}
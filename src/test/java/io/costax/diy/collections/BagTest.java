@@ -2,10 +2,20 @@ package io.costax.diy.collections;
 
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BagTest {
@@ -65,6 +75,19 @@ class BagTest {
         assertEquals(13, bag.getOccurrences("strawberry"));
     }
 
+    @Test
+    public void addNegativeOccurrencesIsRejected() {
+        Bag<String> bag = new Bag<>("apple", "apple");
+
+        assertThrows(IllegalArgumentException.class, () -> bag.addOccurrences("apple", -1));
+        assertThrows(IllegalArgumentException.class, () -> bag.addOccurrences("banana", -1));
+        assertEquals(2, bag.getOccurrences("apple"));
+        assertEquals(0, bag.getOccurrences("banana"));
+        assertEquals(2, bag.size());
+        assertEquals(1, bag.sizeDistinct());
+        assertEquals(2, bag.addOccurrences("apple", 0));
+    }
+
     @Test
     public void removeOccurrencesBag() {
         String apple = "apple";
@@ -143,4 +166,294 @@ class BagTest {
         assertTrue(builder.toString().contains("banana, "));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void growAndShrinkBag() {
+        Bag<Integer> bag = new Bag<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            bag.addOccurrences(i, i % 7 + 1);
+        }
+        assertEquals(10_000, bag.sizeDistinct());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i % 7 + 1, bag.getOccurrences(i));
+        }
+
+        for (int i = 0; i < 10_000; i += 2) {
+            assertTrue(bag.removeOccurrences(i, Integer.MAX_VALUE));
+        }
+        assertEquals(5_000, bag.sizeDistinct());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i % 2 == 0 ? 0 : i % 7 + 1, bag.getOccurrences(i));
+        }
+
+        int[] size = {0};
+        bag.forEachWithOccurrences((each, occurrences) -> size[0] += occurrences);
+        assertEquals(size[0], bag.size());
+    }
+
+    @Test
+    public void nullElementBag() {
+        Bag<String> bag = new Bag<>("apple", null, null);
+
+        assertEquals(2, bag.getOccurrences(null));
+        assertEquals(3, bag.size());
+        assertEquals(2, bag.sizeDistinct());
+
+        assertTrue(bag.removeOccurrences(null, 2));
+        assertEquals(0, bag.getOccurrences(null));
+        assertFalse(bag.removeOccurrence(null));
+    }
+
+    @Test
+    public void topAndBottomOccurrences() {
+        Bag<String> bag = new Bag<>("apple", "banana", "orange", "orange", "orange", "apple");
+        bag.addOccurrences("strawberry", 12);
+
+        assertEquals(List.of(Map.entry("strawberry", 12), Map.entry("orange", 3)), bag.topOccurrences(2));
+        assertEquals(List.of(Map.entry("banana", 1), Map.entry("apple", 2)), bag.bottomOccurrences(2));
+
+        bag.removeOccurrences("strawberry", 10);
+        bag.addOccurrence("banana");
+        bag.addOccurrence("banana");
+        bag.addOccurrence("banana");
+        assertEquals(List.of(Map.entry("banana", 4), Map.entry("orange", 3)), bag.topOccurrences(2));
+        assertEquals(4, bag.topOccurrences(10).size());
+
+        bag.removeOccurrences("banana", 4);
+        assertEquals(Map.entry("orange", 3), bag.topOccurrences(3).get(0));
+        assertEquals(List.of(), bag.topOccurrences(0));
+    }
+
+    @Test
+    public void topOccurrencesAreSorted() {
+        Random random = new Random(42);
+        Bag<Integer> bag = new Bag<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 50_000; i++) {
+            int element = random.nextInt(2_000);
+            int occurrences = random.nextInt(3) == 0 ? 1 + random.nextInt(5) : 1;
+            if (random.nextInt(4) == 0) {
+                bag.removeOccurrences(element, occurrences);
+                expected.computeIfPresent(element, (key, count) -> count > occurrences ? count - occurrences : null);
+            } else {
+                bag.addOccurrences(element, occurrences);
+                expected.merge(element, occurrences, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<Integer, Integer>> top = bag.topOccurrences(bag.sizeDistinct());
+        assertEquals(expected.size(), top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(expected.get(top.get(i).getKey()), top.get(i).getValue());
+            if (i > 0) {
+                assertTrue(top.get(i - 1).getValue() >= top.get(i).getValue());
+            }
+        }
+
+        List<Map.Entry<Integer, Integer>> bottom = bag.bottomOccurrences(bag.sizeDistinct());
+        for (int i = 1; i < bottom.size(); i++) {
+            assertTrue(bottom.get(i - 1).getValue() <= bottom.get(i).getValue());
+        }
+        assertEquals(top.get(top.size() - 1).getValue(), bottom.get(0).getValue());
+    }
+
+    @Test
+    public void addAllBag() {
+        Bag<String> bag = new Bag<>("apple");
+
+        bag.addAll(List.of("orange", "orange", "banana", "orange"));
+        bag.addAll("apple", "apple", "kiwi");
+        assertEquals(3, bag.getOccurrences("apple"));
+        assertEquals(3, bag.getOccurrences("orange"));
+        assertEquals(1, bag.getOccurrences("banana"));
+        assertEquals(8, bag.size());
+        assertEquals(4, bag.sizeDistinct());
+
+        bag.addAll(new Bag<>("kiwi", "kiwi", "mango"));
+        assertEquals(3, bag.getOccurrences("kiwi"));
+        assertEquals(1, bag.getOccurrences("mango"));
+        assertEquals(11, bag.size());
+
+        bag.addAll(bag);
+        assertEquals(6, bag.getOccurrences("apple"));
+        assertEquals(22, bag.size());
+    }
+
+    @Test
+    public void addAllReadsTheElementsOnce() {
+        List<Integer> elements = IntStream.range(0, 10_000).map(i -> i % 100).boxed().collect(Collectors.toList());
+        boolean[] iterated = {false};
+        Collection<Integer> singlePass = new AbstractCollection<>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                assertFalse(iterated[0], "the elements are read twice");
+                iterated[0] = true;
+                return elements.iterator();
+            }
+
+            @Override
+            public int size() {
+                return elements.size();
+            }
+        };
+
+        Bag<Integer> bag = new Bag<>();
+        bag.addAll(singlePass);
+        assertEquals(10_000, bag.size());
+        assertEquals(100, bag.sizeDistinct());
+        assertEquals(100, bag.getOccurrences(42));
+    }
+
+    @Test
+    public void removeAllBag() {
+        Bag<String> bag = new Bag<>("apple", "apple", "orange", "orange", "orange", "banana");
+
+        bag.removeAll(new Bag<>("apple", "orange", "orange", "orange", "orange", "kiwi"));
+        assertEquals(1, bag.getOccurrences("apple"));
+        assertEquals(0, bag.getOccurrences("orange"));
+        assertEquals(1, bag.getOccurrences("banana"));
+        assertEquals(2, bag.size());
+        assertEquals(2, bag.sizeDistinct());
+
+        bag.removeAll(bag);
+        assertEquals(0, bag.size());
+        assertEquals(0, bag.sizeDistinct());
+        assertEquals(0, bag.getOccurrences("apple"));
+    }
+
+    @Test
+    public void clearBag() {
+        Bag<Integer> bag = new Bag<>();
+        for (int i = 0; i < 100; i++) {
+            bag.addOccurrences(i, i % 5 + 1);
+        }
+
+        bag.clear();
+        assertEquals(0, bag.size());
+        assertEquals(0, bag.sizeDistinct());
+        assertEquals(0, bag.getOccurrences(7));
+        assertTrue(bag.topOccurrences(3).isEmpty());
+
+        bag.addOccurrences(7, 3);
+        bag.addOccurrence(8);
+        assertEquals(List.of(Map.entry(7, 3), Map.entry(8, 1)), bag.topOccurrences(5));
+        assertEquals(List.of(Map.entry(8, 1), Map.entry(7, 3)), bag.bottomOccurrences(5));
+        assertEquals(4, bag.size());
+    }
+
+    @Test
+    public void frequencyIndexIsBuiltOnFirstRanking() {
+        Bag<Integer> bag = Bag.withExpectedDistinct(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int round = 0; round < 3; round++) {
+            // the table grows and shifts entries both before and after the index is built
+            for (int i = 0; i < 500; i++) {
+                int element = random.nextInt(200);
+                if (random.nextInt(3) == 0) {
+                    bag.removeOccurrences(element, 2);
+                    expected.computeIfPresent(element, (k, count) -> count > 2 ? count - 2 : null);
+                } else {
+                    bag.addOccurrence(element);
+                    expected.merge(element, 1, Integer::sum);
+                }
+            }
+
+            List<Integer> ranked = bag.topOccurrences(expected.size()).stream()
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toList());
+            assertEquals(expected.values().stream().sorted((a, b) -> b - a).collect(Collectors.toList()), ranked);
+            assertEquals(expected.values().stream().sorted().collect(Collectors.toList()),
+                    bag.bottomOccurrences(expected.size()).stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> Bag.withExpectedDistinct(-1));
+    }
+
+    @Test
+    public void collectToBag() {
+        Bag<Integer> bag = IntStream.range(0, 100_000)
+                .parallel()
+                .mapToObj(i -> i % 10)
+                .collect(Bag.toBag());
+
+        assertEquals(100_000, bag.size());
+        assertEquals(10, bag.sizeDistinct());
+        assertEquals(10_000, bag.getOccurrences(7));
+    }
+
+    @Test
+    public void streamBag() {
+        Bag<String> bag = new Bag<>("apple", "banana", "orange", "orange", "orange", "apple");
+
+        assertEquals(List.of("apple", "apple", "banana", "orange", "orange", "orange"),
+                bag.stream().sorted().collect(Collectors.toList()));
+        assertEquals(List.of("apple", "banana", "orange"),
+                bag.distinctStream().sorted().collect(Collectors.toList()));
+        assertEquals(Map.of("apple", 2, "banana", 1, "orange", 3),
+                bag.entryStream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        assertEquals(6, bag.stream().count());
+    }
+
+    @Test
+    public void parallelStreamBag() {
+        Bag<Integer> bag = IntStream.range(0, 1_000_000)
+                .parallel()
+                .mapToObj(i -> i % 1_000)
+                .collect(Bag.toBag());
+
+        assertEquals(1_000_000, bag.stream().parallel().count());
+        assertEquals(1_000_000L * 999 / 2, bag.stream().parallel().mapToLong(Integer::longValue).sum());
+        assertEquals(1_000, bag.distinctStream().parallel().count());
+
+        Bag<Integer> copy = bag.stream().parallel().collect(Bag.toBag());
+        assertEquals(1_000, copy.getOccurrences(123));
+        assertEquals(bag.size(), copy.size());
+    }
+
+    @Test
+    public void forEachWithIntOccurrences() {
+        Bag<String> bag = new Bag<>("apple", "banana", "orange", "apple");
+
+        Map<String, Integer> counts = new HashMap<>();
+        bag.forEachWithIntOccurrences(counts::put);
+        assertEquals(Map.of("apple", 2, "banana", 1, "orange", 1), counts);
+    }
+
+    @Test
+    public void cursor() {
+        Bag<String> bag = new Bag<>("apple", "banana", "orange", "apple");
+
+        Map<String, Integer> counts = new HashMap<>();
+        Bag.Cursor<String> cursor = bag.cursor();
+        assertThrows(IllegalStateException.class, cursor::key);
+        while (cursor.advance()) {
+            counts.put(cursor.key(), cursor.count());
+        }
+        assertFalse(cursor.advance());
+        assertThrows(IllegalStateException.class, cursor::count);
+        assertEquals(Map.of("apple", 2, "banana", 1, "orange", 1), counts);
+    }
+
+    @Test
+    public void cursorDoesNotAllocate() {
+        Bag<Integer> bag = new Bag<>();
+        for (int i = 0; i < 10_000; i++) {
+            bag.addOccurrences(i, 1_000 + i);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        long total = 0;
+        Bag.Cursor<Integer> cursor = bag.cursor();
+        while (cursor.advance()) {
+            total += cursor.count();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(bag.size(), total);
+        assertTrue(allocated < 1_024, "allocated " + allocated + " bytes");
+    }
+
+}
@@ -0,0 +1,141 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+class BoundedListMultimapTest {
+
+    @Test
+    public void dropOldestValues() {
+        List<String> dropped = new ArrayList<>();
+        BoundedListMultimap<String, String> multimap = new BoundedListMultimap<>(10, 3,
+                new BoundedListMultimap.EvictionListener<>() {
+                    @Override
+                    public void onValueEvicted(String key, String value) {
+                        dropped.add(key + ":" + value);
+                    }
+                });
+
+        multimap.putAll("user", List.of("a", "b", "c", "d", "e"));
+        Assertions.assertEquals(List.of("c", "d", "e"), multimap.get("user"));
+        Assertions.assertEquals(List.of("user:a", "user:b"), dropped);
+        Assertions.assertEquals(2, multimap.valueEvictions());
+        Assertions.assertEquals(3, multimap.size());
+
+        Assertions.assertTrue(multimap.remove("user", "d"));
+        multimap.put("user", "f");
+        Assertions.assertEquals(List.of("c", "e", "f"), multimap.get("user"));
+        Assertions.assertEquals(2, multimap.valueEvictions());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedKeys() {
+        List<String> evicted = new ArrayList<>();
+        BoundedListMultimap<String, Integer> multimap = new BoundedListMultimap<>(2, 10,
+                new BoundedListMultimap.EvictionListener<>() {
+                    @Override
+                    public void onKeyEvicted(String key, Collection<? extends Integer> values) {
+                        evicted.add(key + values);
+                    }
+                });
+
+        multimap.putAll("a", List.of(1, 2));
+        multimap.put("b", 3);
+        multimap.put("a", 5);
+        multimap.put("c", 4);
+
+        Assertions.assertEquals(List.of("b[3]"), evicted);
+        Assertions.assertEquals(Set.of("a", "c"), multimap.keySet());
+        Assertions.assertEquals(4, multimap.size());
+        Assertions.assertEquals(1, multimap.keyEvictions());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedListMultimap<>(0, 1));
+    }
+
+    @Test
+    public void listenerCanWriteToTheMultimap() {
+        List<String> evicted = new ArrayList<>();
+        AtomicReference<BoundedListMultimap<String, String>> holder = new AtomicReference<>();
+        holder.set(new BoundedListMultimap<>(2, 10,
+                new BoundedListMultimap.EvictionListener<>() {
+                    @Override
+                    public void onKeyEvicted(String key, Collection<? extends String> values) {
+                        evicted.add(key);
+                        holder.get().put("log", key);
+                    }
+                }));
+        BoundedListMultimap<String, String> multimap = holder.get();
+
+        multimap.put("a", "1");
+        multimap.put("b", "2");
+        // "c" evicts "a", logging it evicts "b"
+        multimap.put("c", "3");
+
+        Assertions.assertEquals(List.of("a", "b"), evicted);
+        Assertions.assertEquals(List.of("c", "log"), new ArrayList<>(multimap.keySet()));
+        Assertions.assertEquals(List.of("a", "b"), multimap.get("log"));
+        Assertions.assertEquals(3, multimap.size());
+        Assertions.assertEquals(2, multimap.keyEvictions());
+    }
+
+    @Test
+    public void readsDoNotReorderTheKeys() {
+        BoundedListMultimap<String, Integer> multimap = new BoundedListMultimap<>(2, 10);
+        multimap.put("a", 1);
+        multimap.put("b", 2);
+
+        for (String key : multimap.keySet()) {
+            Assertions.assertEquals(1, multimap.get(key).size());
+        }
+        multimap.forEach((key, value) -> multimap.get(key));
+        // "a" is still the least recently used key
+        multimap.put("c", 3);
+        Assertions.assertEquals(List.of("b", "c"), new ArrayList<>(multimap.keySet()));
+    }
+
+    @Test
+    public void overwriteInvalidatesIterators() {
+        BoundedListMultimap<String, Integer> multimap = new BoundedListMultimap<>(2, 2);
+        multimap.putAll("a", List.of(1, 2));
+
+        Iterator<Integer> iterator = multimap.get("a").iterator();
+        multimap.put("a", 3);
+        Assertions.assertThrows(ConcurrentModificationException.class, iterator::next);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serialization() throws IOException, ClassNotFoundException {
+        BoundedListMultimap<String, Integer> multimap = new BoundedListMultimap<>(2, 2);
+        multimap.putAll("a", List.of(1, 2, 3));
+        multimap.put("b", 4);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(multimap);
+        }
+        BoundedListMultimap<String, Integer> copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (BoundedListMultimap<String, Integer>) in.readObject();
+        }
+
+        Assertions.assertEquals(List.of(2, 3), copy.get("a"));
+        copy.put("a", 5);
+        copy.put("c", 6);
+        // "b" is the least recently used key of the copy too
+        Assertions.assertEquals(Set.of("a", "c"), copy.keySet());
+        Assertions.assertEquals(List.of(3, 5), copy.get("a"));
+    }
+}
@@ -0,0 +1,240 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CollectionsCodecTest {
+
+    @Test
+    public void bagRoundTrip() throws IOException {
+        Bag<Object> bag = new Bag<>("apple", "apple", 42, -7L, null, LocalDate.of(2020, 4, 1));
+        bag.addOccurrences("orange", 1_000_000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectionsCodec.writeBag(bag, out);
+        Bag<Object> copy = CollectionsCodec.readBag(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(bag.size(), copy.size());
+        assertEquals(bag.sizeDistinct(), copy.sizeDistinct());
+        assertEquals(2, copy.getOccurrences("apple"));
+        assertEquals(1, copy.getOccurrences(42));
+        assertEquals(1, copy.getOccurrences(-7L));
+        assertEquals(1, copy.getOccurrences(null));
+        assertEquals(1, copy.getOccurrences(LocalDate.of(2020, 4, 1)));
+        assertEquals(1_000_000, copy.getOccurrences("orange"));
+    }
+
+    @Test
+    public void streamBagSnapshot() throws IOException {
+        Bag<String> bag = new Bag<>("apple", "apple", "banana");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectionsCodec.writeBag(bag, out);
+
+        Map<String, Integer> entries = new HashMap<>();
+        CollectionsCodec.<String>readBag(new ByteArrayInputStream(out.toByteArray()), entries::put);
+
+        assertEquals(Map.of("apple", 2, "banana", 1), entries);
+    }
+
+    @Test
+    public void multimapRoundTrip() throws IOException {
+        SetMultimap<String, String> multimap = new SetMultimap<>();
+        multimap.put("Animal", "Cat");
+        multimap.put("Animal", "Dog");
+        multimap.put("Animal", "Elephant");
+        multimap.put("Pet", "Cat");
+        multimap.put("Pet", null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectionsCodec.writeMultimap(multimap, out);
+        SetMultimap<String, String> copy = CollectionsCodec.readMultimap(
+                new ByteArrayInputStream(out.toByteArray()), new SetMultimap<>());
+
+        assertEquals(Set.of("Cat", "Dog", "Elephant"), copy.get("Animal"));
+        assertEquals(new HashSet<>(multimap.get("Pet")), copy.get("Pet"));
+    }
+
+    @Test
+    public void javaSerializationUsesTheProxy() throws IOException, ClassNotFoundException {
+        Bag<String> bag = new Bag<>("apple", "apple", "banana");
+        ListMultimap<String, Integer> multimap = new ListMultimap<>();
+        multimap.put("odd", 1);
+        multimap.putAll("odd", List.of(3, 5, 3));
+
+        Bag<String> bagCopy = roundTrip(bag);
+        ListMultimap<String, Integer> multimapCopy = roundTrip(multimap);
+
+        assertEquals(2, bagCopy.getOccurrences("apple"));
+        assertEquals(3, bagCopy.size());
+        assertSame(ListMultimap.class, multimapCopy.getClass());
+        assertEquals(List.of(1, 3, 5, 3), multimapCopy.get("odd"));
+    }
+
+    @Test
+    public void smallerThanTheDefaultSerializedForm() throws IOException {
+        Bag<String> bag = new Bag<>();
+        Map<String, Integer> counts = new HashMap<>();
+        SetMultimap<String, String> multimap = new SetMultimap<>();
+        Map<String, Set<String>> groups = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            String sku = "sku-" + (i % 20_000);
+            bag.addOccurrence(sku);
+            counts.merge(sku, 1, Integer::sum);
+
+            String user = "user-" + (i % 5_000);
+            String group = "group-" + (i % 97);
+            multimap.put(user, group);
+            groups.computeIfAbsent(user, key -> new HashSet<>()).add(group);
+        }
+
+        int bagSize = serializedSize(bag);
+        int multimapSize = serializedSize(multimap);
+        int countsSize = serializedSize(counts);
+        int groupsSize = serializedSize(groups);
+        assertTrue(bagSize < countsSize);
+        assertTrue(multimapSize * 5 < groupsSize);
+    }
+
+    @Test
+    public void serializedElementsShareTheirClassDescriptors() throws IOException {
+        Bag<LocalDate> bag = new Bag<>();
+        Map<LocalDate, Integer> counts = new HashMap<>();
+        LocalDate day = LocalDate.of(2000, 1, 1);
+        for (int i = 0; i < 5_000; i++) {
+            bag.addOccurrences(day.plusDays(i), i % 7 + 1);
+            counts.put(day.plusDays(i), i % 7 + 1);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectionsCodec.writeBag(bag, out);
+        Bag<LocalDate> copy = CollectionsCodec.readBag(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(bag.size(), copy.size());
+        assertEquals(7, copy.getOccurrences(day.plusDays(6)));
+        assertTrue(out.size() < serializedSize(counts));
+    }
+
+    @Test
+    public void serializedElementsBetweenLiterals() throws IOException {
+        ListMultimap<Object, Object> multimap = new ListMultimap<>();
+        multimap.put("start", LocalDate.of(2020, 4, 1));
+        multimap.put(LocalDate.of(2020, 4, 2), "middle");
+        multimap.put(LocalDate.of(2020, 4, 2), 42);
+        multimap.put(Set.of("nested"), LocalDate.of(2020, 4, 1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CollectionsCodec.writeMultimap(multimap, out);
+        out.write(7);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        ListMultimap<Object, Object> copy = CollectionsCodec.readMultimap(in, new ListMultimap<>());
+
+        assertEquals(List.of(LocalDate.of(2020, 4, 1)), copy.get("start"));
+        assertEquals(List.of("middle", 42), copy.get(LocalDate.of(2020, 4, 2)));
+        assertEquals(List.of(LocalDate.of(2020, 4, 1)), copy.get(Set.of("nested")));
+        // the object stream did not read past the snapshot
+        assertEquals(7, in.read());
+    }
+
+    @Test
+    public void unknownReferenceIsRejected() {
+        // version, multimap, a key with one value, the key is a reference to the id 5 of an empty dictionary
+        byte[] snapshot = {3, 'M', 1, (5 << 1) | 1};
+
+        assertThrows(StreamCorruptedException.class,
+                () -> CollectionsCodec.readMultimap(new ByteArrayInputStream(snapshot), new ListMultimap<>()));
+    }
+
+    @Test
+    public void corruptLengthsAreRejected() {
+        // version, bag, one element, a string literal of length -1
+        byte[] negativeLength = {3, 'B', 1, 1 << 1, -1, -1, -1, -1, 0x0F};
+        // version, bag, one element, a string literal of length 2^31 - 1 with only 3 bytes
+        byte[] hugeLength = {3, 'B', 1, 1 << 1, -1, -1, -1, -1, 0x07, 'a', 'b', 'c'};
+        // version, bag, -1 elements
+        byte[] negativeCount = {3, 'B', -1, -1, -1, -1, 0x0F};
+
+        assertThrows(StreamCorruptedException.class,
+                () -> CollectionsCodec.readBag(new ByteArrayInputStream(negativeLength)));
+        assertThrows(EOFException.class,
+                () -> CollectionsCodec.readBag(new ByteArrayInputStream(hugeLength)));
+        assertThrows(StreamCorruptedException.class,
+                () -> CollectionsCodec.readBag(new ByteArrayInputStream(negativeCount)));
+    }
+
+    @Test
+    public void javaSerializationKeepsTheInverseIndex() throws IOException, ClassNotFoundException {
+        SetMultimap<String, String> multimap = new SetMultimap<>();
+        multimap.put("Animal", "Cat");
+        multimap.put("Pet", "Cat");
+        multimap.inverse();
+
+        SetMultimap<String, String> copy = roundTrip(multimap);
+
+        assertTrue(copy.inverseIndexFootprint() > 0);
+        assertEquals(Set.of("Animal", "Pet"), copy.inverse().get("Cat"));
+        copy.remove("Pet", "Cat");
+        assertEquals(Set.of("Animal"), copy.inverse().get("Cat"));
+        assertEquals(0, roundTrip(new SetMultimap<String, String>()).inverseIndexFootprint());
+    }
+
+    @Test
+    public void elementsGoThroughTheEnclosingObjectStream() throws IOException, ClassNotFoundException {
+        LocalDate day = LocalDate.of(2020, 4, 1);
+        Bag<LocalDate> bag = new Bag<>(day, day);
+
+        Object[] copy = roundTrip(new Object[]{day, bag});
+        @SuppressWarnings("unchecked")
+        Bag<LocalDate> bagCopy = (Bag<LocalDate>) copy[1];
+        assertEquals(2, bagCopy.getOccurrences(day));
+        assertSame(copy[0], bagCopy.stream().findFirst().orElseThrow());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(bag);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            in.setObjectInputFilter(ObjectInputFilter.Config.createFilter("!java.time.*"));
+            assertThrows(InvalidClassException.class, in::readObject);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> T roundTrip(final T object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+
+    private static int serializedSize(final Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.size();
+    }
+}
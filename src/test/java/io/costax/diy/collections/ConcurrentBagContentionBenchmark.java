@@ -0,0 +1,70 @@
+package io.costax.diy.collections;
+
+import io.costax.TimerMarker;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+/**
+ * Many threads counting a handful of hot keys.
+ * <p>
+ * The synchronized {@link Bag} serializes every update on the same monitor, the {@link ConcurrentBag}
+ * spreads the updates of a hot key over the striped cells of its counter.
+ */
+public class ConcurrentBagContentionBenchmark {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int ITERATIONS = 2_000_000;
+    private static final String[] HOT_KEYS = {"sku-1", "sku-2", "sku-3"};
+
+    @Rule
+    public TimerMarker marker = TimerMarker.timer();
+
+    @Test
+    public void synchronizedBag() throws InterruptedException {
+        final Bag<String> bag = new Bag<>();
+
+        run(key -> {
+            synchronized (bag) {
+                bag.addOccurrence(key);
+            }
+        });
+
+        Assert.assertEquals(THREADS * ITERATIONS, bag.size());
+    }
+
+    @Test
+    public void concurrentBag() throws InterruptedException {
+        final ConcurrentBag<String> bag = new ConcurrentBag<>();
+
+        run(bag::addOccurrence);
+
+        Assert.assertEquals(THREADS * ITERATIONS, bag.size());
+    }
+
+    private static void run(final Consumer<String> addOccurrence) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < ITERATIONS; i++) {
+                    addOccurrence.accept(HOT_KEYS[i % HOT_KEYS.length]);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
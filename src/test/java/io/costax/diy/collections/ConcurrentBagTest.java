@@ -0,0 +1,82 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentBagTest {
+
+    @Test
+    public void createConcurrentBag() {
+        ConcurrentBag<String> bag = new ConcurrentBag<>("apple", "banana", "orange", "apple");
+
+        assertEquals(2, bag.getOccurrences("apple"));
+        assertEquals(1, bag.getOccurrences("banana"));
+        assertEquals(4, bag.size());
+        assertEquals(3, bag.sizeDistinct());
+        assertThrows(NullPointerException.class, () -> bag.addOccurrence(null));
+    }
+
+    @Test
+    public void removeOccurrencesConcurrentBag() {
+        ConcurrentBag<String> bag = new ConcurrentBag<>("apple", "orange", "orange", "orange");
+
+        assertTrue(bag.removeOccurrence("orange"));
+        assertEquals(2, bag.getOccurrences("orange"));
+        assertEquals(3, bag.size());
+
+        assertTrue(bag.removeOccurrences("orange", 4));
+        assertEquals(0, bag.getOccurrences("orange"));
+        assertEquals(1, bag.size());
+        assertEquals(1, bag.sizeDistinct());
+        assertFalse(bag.removeOccurrence("orange"));
+
+        bag.addOccurrences("orange", 3);
+        assertEquals(3, bag.getOccurrences("orange"));
+    }
+
+    @Test
+    public void concurrentAddAndRemoveOnHotKey() throws Exception {
+        final int threads = 8;
+        final int iterations = 100_000;
+        ConcurrentBag<String> bag = new ConcurrentBag<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final boolean remover = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    assertTrue(bag.addOccurrences("hot", 2) >= 2);
+                    if (remover) {
+                        assertTrue(bag.removeOccurrence("hot"));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        // the assertion failures of the workers are rethrown by get
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        final int expected = threads * iterations * 2 - threads / 2 * iterations;
+        assertEquals(expected, bag.getOccurrences("hot"));
+        assertEquals(expected, bag.size());
+    }
+}
@@ -0,0 +1,122 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class ConcurrentMultimapTest {
+
+    @Test
+    public void putAndRemove() {
+        ConcurrentListMultimap<String, String> listMultimap = new ConcurrentListMultimap<>();
+        listMultimap.put("Animal", "Cat");
+        listMultimap.putAll("Animal", List.of("Dog", "Cat"));
+        Assertions.assertEquals(List.of("Cat", "Dog", "Cat"), listMultimap.get("Animal"));
+
+        ConcurrentSetMultimap<String, String> setMultimap = new ConcurrentSetMultimap<>();
+        setMultimap.putAll("Animal", List.of("Cat", "Dog", "Cat"));
+        Assertions.assertEquals(Set.of("Cat", "Dog"), setMultimap.get("Animal"));
+        Assertions.assertEquals(2, setMultimap.size());
+
+        Assertions.assertTrue(setMultimap.remove("Animal", "Cat"));
+        Assertions.assertTrue(setMultimap.remove("Animal", "Dog"));
+        Assertions.assertFalse(setMultimap.remove("Animal", "Dog"));
+        Assertions.assertEquals(Set.of(), setMultimap.get("Animal"));
+        Assertions.assertEquals(Set.of(), setMultimap.putAll("Plant", List.of()));
+    }
+
+    @Test
+    public void concurrentPutAndRemoveOnTheSameKey() throws InterruptedException {
+        final int threads = 8;
+        final int iterations = 10_000;
+        ConcurrentSetMultimap<String, Integer> multimap = new ConcurrentSetMultimap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < iterations; i++) {
+                    int value = thread * iterations + i;
+                    multimap.put("subscribers", value);
+                    // every other value is removed again, the key keeps disappearing and coming back
+                    if (i % 2 == 0) {
+                        multimap.remove("subscribers", value);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        Assertions.assertEquals(threads * iterations / 2, multimap.get("subscribers").size());
+        Assertions.assertEquals(threads * iterations / 2, multimap.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serializeWhileWriting() throws Exception {
+        final int threads = 4;
+        ConcurrentSetMultimap<Integer, Integer> multimap = new ConcurrentSetMultimap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<?>> writers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    // keys come and go, and the values of the hot key 0 keep changing
+                    int key = thread % 2 == 0 ? i % 64 : 0;
+                    int value = key * 1_000_000 + thread * 100_000 + i % 100_000;
+                    multimap.put(key, value);
+                    multimap.remove(key, key * 1_000_000 + thread * 100_000 + (i - 3) % 100_000);
+                }
+            }));
+        }
+        try {
+            for (int round = 0; round < 50; round++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(multimap);
+                }
+                ConcurrentSetMultimap<Integer, Integer> copy;
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                    copy = (ConcurrentSetMultimap<Integer, Integer>) in.readObject();
+                }
+                for (Integer key : copy.keySet()) {
+                    Assertions.assertFalse(copy.get(key).isEmpty());
+                    for (Integer value : copy.get(key)) {
+                        Assertions.assertEquals(key, value / 1_000_000);
+                    }
+                }
+            }
+        } finally {
+            stop.set(true);
+            executor.shutdown();
+        }
+        for (Future<?> writer : writers) {
+            writer.get(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.costax.diy.collections;
+
+import io.costax.TimerMarker;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+
+/**
+ * Threads sharing a work stack, each one pushing and popping in pairs, from 1 to 64 threads.
+ * <p>
+ * The synchronized {@code item13} stack serializes every operation on its monitor, the {@link ConcurrentLinkedDeque}
+ * and the {@link ConcurrentStack} are lock-free, and the pairs of the latter can also cancel out in its elimination
+ * array. Each line prints the throughput of one thread count.
+ */
+public class ConcurrentStackBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int OPERATIONS = 4_000_000;
+
+    @Rule
+    public TimerMarker marker = TimerMarker.timer();
+
+    @Test
+    public void synchronizedStack() throws InterruptedException {
+        final io.costax.item13.entity.Stack stack = new io.costax.item13.entity.Stack();
+
+        run("synchronizedStack", i -> {
+            synchronized (stack) {
+                stack.push(i);
+            }
+            synchronized (stack) {
+                stack.pop();
+            }
+        });
+    }
+
+    @Test
+    public void concurrentLinkedDeque() throws InterruptedException {
+        final ConcurrentLinkedDeque<Integer> deque = new ConcurrentLinkedDeque<>();
+
+        run("concurrentLinkedDeque", i -> {
+            deque.push(i);
+            deque.pollFirst();
+        });
+    }
+
+    @Test
+    public void concurrentStack() throws InterruptedException {
+        final ConcurrentStack<Integer> stack = new ConcurrentStack<>();
+
+        run("concurrentStack", i -> {
+            stack.push(i);
+            stack.pop();
+        });
+    }
+
+    private static void run(final String name, final IntConsumer pushAndPop) throws InterruptedException {
+        for (final int threads : THREADS) {
+            final int pairs = OPERATIONS / 2 / threads;
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < pairs; i++) {
+                        pushAndPop.accept(i & 1023);
+                    }
+                });
+                workers[t].start();
+            }
+
+            final long before = System.nanoTime();
+            start.countDown();
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+            final long elapsed = System.nanoTime() - before;
+            System.out.printf("%s, %d threads: %d ops/ms%n", name, threads, 2L * pairs * threads * 1_000_000 / elapsed);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class ConcurrentStackTest {
+
+    @Test
+    public void pushAndPop() {
+        ConcurrentStack<String> stack = new ConcurrentStack<>();
+        Assertions.assertNull(stack.pop());
+
+        stack.push("a");
+        stack.push("b");
+        Assertions.assertEquals("b", stack.peek());
+        Assertions.assertEquals("b", stack.pop());
+        Assertions.assertEquals("a", stack.pop());
+        Assertions.assertTrue(stack.isEmpty());
+        Assertions.assertThrows(NullPointerException.class, () -> stack.push(null));
+    }
+
+    @Test
+    public void concurrentPushAndPop() throws Exception {
+        final int threads = 8;
+        final int iterations = 50_000;
+        ConcurrentStack<Integer> stack = new ConcurrentStack<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<List<Integer>>> popped = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            popped.add(executor.submit(() -> {
+                start.await();
+                List<Integer> values = new ArrayList<>();
+                for (int i = 0; i < iterations; i++) {
+                    stack.push(thread * iterations + i);
+                    // every other iteration pops, so pushes and pops overlap and meet in the elimination array
+                    if (i % 2 == 1) {
+                        values.add(stack.pop());
+                    }
+                }
+                return values;
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> all = new HashSet<>();
+        for (Future<List<Integer>> future : popped) {
+            for (Integer value : future.get()) {
+                Assertions.assertNotNull(value);
+                Assertions.assertTrue(all.add(value));
+            }
+        }
+        executor.shutdown();
+        Integer value;
+        while ((value = stack.pop()) != null) {
+            Assertions.assertTrue(all.add(value));
+        }
+        Assertions.assertEquals(threads * iterations, all.size());
+    }
+}
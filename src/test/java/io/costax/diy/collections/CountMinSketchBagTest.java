@@ -0,0 +1,73 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchBagTest {
+
+    @Test
+    public void estimatesAreNeverLowerThanTheCounts() {
+        final double epsilon = 0.001;
+        CountMinSketchBag<String> bag = new CountMinSketchBag<>(epsilon, 0.99);
+        Map<String, Integer> counts = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 200_000; i++) {
+            String url = "/page/" + random.nextInt(50_000);
+            bag.addOccurrence(url);
+            counts.merge(url, 1, Integer::sum);
+        }
+
+        assertEquals(200_000, bag.size());
+        int outOfBounds = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            int estimate = bag.getOccurrences(entry.getKey());
+            assertTrue(estimate >= entry.getValue());
+            if (estimate - entry.getValue() > epsilon * bag.size()) {
+                outOfBounds++;
+            }
+        }
+        assertTrue(outOfBounds <= counts.size() / 100);
+    }
+
+    @Test
+    public void heavyHitters() {
+        CountMinSketchBag<String> bag = new CountMinSketchBag<>(0.001, 0.99, 3);
+        Random random = new Random(11);
+
+        for (int i = 0; i < 100_000; i++) {
+            bag.addOccurrence("agent-" + random.nextInt(10_000));
+            if (i % 10 == 0) {
+                bag.addOccurrence("curl");
+            }
+            if (i % 20 == 0) {
+                bag.addOccurrence("firefox");
+            }
+            if (i % 40 == 0) {
+                bag.addOccurrence("chrome");
+            }
+        }
+
+        List<String> heavyHitters = bag.heavyHitters().stream()
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        assertEquals(List.of("curl", "firefox", "chrome"), heavyHitters);
+        assertTrue(bag.heavyHitters().get(0).getValue() >= 10_000);
+    }
+
+    @Test
+    public void invalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketchBag<>(0, 0.9));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketchBag<>(0.01, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketchBag<>(0.01, 0.9).addOccurrences("x", -1));
+    }
+}
@@ -0,0 +1,87 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class ImmutableMultimapTest {
+
+    @Test
+    public void freeze() {
+        ListMultimap<String, String> listMultimap = new ListMultimap<>();
+        listMultimap.put("Animal", "Cat");
+        listMultimap.put("Animal", "Dog");
+        listMultimap.put("Plant", "Oak");
+        listMultimap.put(null, "Nothing");
+
+        ImmutableMultimap<String, String> routes = listMultimap.freeze();
+        listMultimap.put("Animal", "Elephant");
+
+        Assertions.assertEquals(List.of("Cat", "Dog"), routes.get("Animal"));
+        Assertions.assertEquals(List.of("Oak"), routes.get("Plant"));
+        Assertions.assertEquals(List.of("Nothing"), routes.get(null));
+        Assertions.assertEquals(List.of(), routes.get("Mineral"));
+        Assertions.assertTrue(routes.containsKey("Plant"));
+        Assertions.assertFalse(routes.containsKey("Mineral"));
+        Assertions.assertEquals(4, routes.size());
+        Assertions.assertEquals(3, routes.keyCount());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> routes.get("Animal").add("Cow"));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> routes.get("Plant").get(1));
+    }
+
+    @Test
+    public void freezeManyKeys() {
+        SetMultimap<Integer, Integer> multimap = new SetMultimap<>();
+        for (int i = 0; i < 10_000; i++) {
+            multimap.put(i % 1_000, i);
+        }
+
+        ImmutableMultimap<Integer, Integer> frozen = multimap.freeze();
+        Map<Integer, List<Integer>> visited = new HashMap<>();
+        frozen.forEach(visited::put);
+
+        Assertions.assertEquals(1_000, visited.size());
+        Assertions.assertEquals(10_000, frozen.size());
+        for (int key = 0; key < 1_000; key++) {
+            Assertions.assertEquals(10, frozen.get(key).size());
+            Assertions.assertTrue(frozen.get(key).containsAll(multimap.get(key)));
+        }
+    }
+
+    @Test
+    public void freezeEmpty() {
+        ImmutableMultimap<String, String> frozen = new ListMultimap<String, String>().freeze();
+
+        Assertions.assertEquals(0, frozen.size());
+        Assertions.assertEquals(List.of(), frozen.get("Animal"));
+    }
+
+    @Test
+    public void freezeConcurrentMultimapWhileWriting() throws InterruptedException {
+        ConcurrentListMultimap<Integer, Integer> multimap = new ConcurrentListMultimap<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                multimap.put(i % 500, i);
+                if (i % 3 == 0) {
+                    multimap.removeAll((i / 3) % 500);
+                }
+            }
+        });
+        writer.start();
+
+        do {
+            ImmutableMultimap<Integer, Integer> frozen = ImmutableMultimap.copyOf(multimap);
+            int[] size = {0};
+            frozen.forEach((key, values) -> {
+                Assertions.assertFalse(values.isEmpty());
+                values.forEach(value -> Assertions.assertEquals(key, value % 500));
+                size[0] += values.size();
+            });
+            Assertions.assertEquals(frozen.size(), size[0]);
+        } while (writer.isAlive());
+        writer.join();
+    }
+}
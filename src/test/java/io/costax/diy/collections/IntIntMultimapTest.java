@@ -0,0 +1,55 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class IntIntMultimapTest {
+
+    @Test
+    public void putAndGet() {
+        IntIntMultimap multimap = new IntIntMultimap();
+        multimap.put(1, 10);
+        multimap.put(1, 11);
+        multimap.put(1, 10);
+        multimap.putAll(0, 5, 6);
+
+        Assertions.assertArrayEquals(new int[]{10, 11, 10}, multimap.get(1));
+        Assertions.assertArrayEquals(new int[]{5, 6}, multimap.get(0));
+        Assertions.assertArrayEquals(new int[0], multimap.get(2));
+        Assertions.assertEquals(5, multimap.size());
+        Assertions.assertEquals(2, multimap.keyCount());
+        Assertions.assertEquals(3, multimap.valueCount(1));
+
+        List<Integer> visited = new ArrayList<>();
+        multimap.forEach(1, visited::add);
+        Assertions.assertEquals(List.of(10, 11, 10), visited);
+    }
+
+    @Test
+    public void removeAndGrow() {
+        IntIntMultimap multimap = new IntIntMultimap();
+        for (int key = 0; key < 10_000; key++) {
+            multimap.put(key, key * 2);
+            multimap.put(key, key * 3);
+        }
+        Assertions.assertEquals(20_000, multimap.size());
+
+        for (int key = 0; key < 10_000; key += 2) {
+            Assertions.assertTrue(multimap.remove(key, key * 2));
+            Assertions.assertArrayEquals(new int[]{key * 3}, multimap.removeAll(key));
+        }
+        Assertions.assertFalse(multimap.remove(1, 7));
+        Assertions.assertEquals(10_000, multimap.size());
+        Assertions.assertEquals(5_000, multimap.keyCount());
+
+        for (int key = 0; key < 10_000; key++) {
+            Assertions.assertEquals(key % 2 == 1, multimap.containsKey(key));
+        }
+        long[] sum = {0};
+        multimap.forEach((key, value) -> sum[0] += value - key);
+        Assertions.assertEquals(3L * 5_000 * 5_000, sum[0]);
+    }
+}
@@ -0,0 +1,41 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.EmptyStackException;
+
+class IntStackTest {
+
+    @Test
+    public void pushAndPop() {
+        IntStack stack = new IntStack();
+        stack.push(1);
+        stack.pushAll(2, 3, 4);
+
+        Assertions.assertEquals(4, stack.size());
+        Assertions.assertEquals(4, stack.peek());
+        Assertions.assertEquals(4, stack.pop());
+        Assertions.assertArrayEquals(new int[]{3, 2}, stack.popN(2));
+        Assertions.assertEquals(1, stack.pop());
+        Assertions.assertTrue(stack.isEmpty());
+        Assertions.assertThrows(EmptyStackException.class, stack::pop);
+        Assertions.assertThrows(EmptyStackException.class, stack::peek);
+        Assertions.assertThrows(EmptyStackException.class, () -> stack.popN(1));
+    }
+
+    @Test
+    public void growAndTrim() {
+        IntStack stack = new IntStack(0, 1.5f);
+        for (int i = 0; i < 100_000; i++) {
+            stack.push(i);
+        }
+        Assertions.assertTrue(stack.capacity() >= 100_000);
+
+        stack.popN(99_990);
+        stack.trimToSize();
+        Assertions.assertEquals(10, stack.capacity());
+        Assertions.assertEquals(9, stack.peek());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IntStack(16, 1.0f));
+    }
+}
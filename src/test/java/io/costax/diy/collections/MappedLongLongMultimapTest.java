@@ -0,0 +1,165 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+class MappedLongLongMultimapTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void putAndReopen() throws IOException {
+        Path file = this.directory.resolve("index.db");
+        try (MappedLongLongMultimap multimap = MappedLongLongMultimap.open(file, 1_000)) {
+            for (long value = 0; value < 20_000; value++) {
+                multimap.put(1L << 40, value);
+            }
+            multimap.putAll(7, 70, 71);
+            Assertions.assertEquals(20_002, multimap.size());
+        }
+
+        try (MappedLongLongMultimap multimap = MappedLongLongMultimap.open(file, 0)) {
+            Assertions.assertEquals(20_002, multimap.size());
+            Assertions.assertEquals(2, multimap.keyCount());
+            Assertions.assertEquals(20_000, multimap.count(1L << 40));
+            Assertions.assertArrayEquals(LongStream.range(0, 20_000).toArray(), multimap.get(1L << 40));
+            Assertions.assertArrayEquals(new long[]{70, 71}, multimap.get(7));
+            Assertions.assertArrayEquals(new long[0], multimap.get(8));
+
+            multimap.put(7, 72);
+            long[] sum = {0};
+            multimap.forEach((key, value) -> sum[0] += key == 7 ? value : 0);
+            Assertions.assertEquals(70 + 71 + 72, sum[0]);
+        }
+    }
+
+    @Test
+    public void replayWriteAheadLog() throws IOException {
+        Path file = this.directory.resolve("index.db");
+        Path crashed = Files.createDirectory(this.directory.resolve("crashed")).resolve("index.db");
+
+        MappedLongLongMultimap multimap = MappedLongLongMultimap.open(file, 16);
+        multimap.put(1, 10);
+        multimap.checkpoint();
+        // the data file as of the checkpoint, as if the later writes to the mapped pages were lost
+        Files.copy(file, crashed);
+
+        multimap.put(1, 11);
+        multimap.put(2, 20);
+        multimap.sync();
+        Files.copy(this.directory.resolve("index.db.wal"), crashed.resolveSibling("index.db.wal"));
+        multimap.close();
+
+        try (MappedLongLongMultimap recovered = MappedLongLongMultimap.open(crashed, 16)) {
+            Assertions.assertArrayEquals(new long[]{10, 11}, recovered.get(1));
+            Assertions.assertArrayEquals(new long[]{20}, recovered.get(2));
+            Assertions.assertEquals(3, recovered.size());
+        }
+        // the log was applied and restarted, reopening again does not append the values twice
+        try (MappedLongLongMultimap recovered = MappedLongLongMultimap.open(crashed, 16)) {
+            Assertions.assertEquals(3, recovered.size());
+            // only the record of the checkpoint: next free offset, key count, size and checksum
+            Assertions.assertEquals(28, Files.size(crashed.resolveSibling("index.db.wal")));
+        }
+    }
+
+    @Test
+    public void replayIsIdempotent() throws IOException {
+        Path file = this.directory.resolve("index.db");
+        MappedLongLongMultimap multimap = MappedLongLongMultimap.open(file, 16);
+        multimap.putAll(3, 30, 31, 32);
+
+        // reopened without a clean close: the log holds appends that already reached the mapped file
+        try (MappedLongLongMultimap recovered = MappedLongLongMultimap.open(file, 16)) {
+            Assertions.assertArrayEquals(new long[]{30, 31, 32}, recovered.get(3));
+            Assertions.assertEquals(3, recovered.size());
+        }
+    }
+
+    @Test
+    public void recoverFromPartiallyWrittenPages() throws IOException {
+        Path file = this.directory.resolve("index.db");
+        MappedLongLongMultimap multimap = MappedLongLongMultimap.open(file, 1_000);
+        multimap.put(1, 10);
+        multimap.checkpoint();
+        byte[] checkpointed = Files.readAllBytes(file);
+
+        multimap.put(2, 20);
+        multimap.put(3, 30);
+        for (long value = 11; value < 30; value++) {
+            multimap.put(1, value);
+        }
+        multimap.put(2, 21);
+        multimap.sync();
+        // the mapped pages are read through the page cache, as the OS would write them back
+        byte[] written = Files.readAllBytes(file);
+        byte[] log = Files.readAllBytes(this.directory.resolve("index.db.wal"));
+        multimap.close();
+        // the pages of a checkpoint that did not complete
+        byte[] published = Files.readAllBytes(file);
+
+        int crash = 0;
+        for (byte[] later : List.of(written, published)) {
+            Assertions.assertEquals(checkpointed.length, later.length);
+            for (int page = 0; page < checkpointed.length / PAGE_SIZE; page++) {
+                if (Arrays.equals(checkpointed, page * PAGE_SIZE, (page + 1) * PAGE_SIZE,
+                        later, page * PAGE_SIZE, (page + 1) * PAGE_SIZE)) {
+                    continue;
+                }
+                // only this page reached the disk, then every page but this one
+                this.assertRecovered(withPage(checkpointed, later, page), log, new long[]{20, 21}, crash++);
+                this.assertRecovered(withPage(later, checkpointed, page), log, new long[]{20, 21}, crash++);
+            }
+        }
+        Assertions.assertTrue(crash > 4);
+
+        // the last append reached the mapped pages but not the log, it was never synced
+        byte[] unsynced = Arrays.copyOf(log, log.length - 28);
+        this.assertRecovered(written, unsynced, new long[]{20}, crash);
+    }
+
+    @Test
+    public void keyTableFull() throws IOException {
+        Path file = this.directory.resolve("index.db");
+        try (MappedLongLongMultimap multimap = MappedLongLongMultimap.open(file, 0)) {
+            for (long key = 0; key < 8; key++) {
+                multimap.put(key, key);
+            }
+            Assertions.assertThrows(IllegalStateException.class, () -> multimap.put(8, 8));
+            Assertions.assertEquals(8, multimap.size());
+        }
+        // a small multimap makes a small file
+        Assertions.assertEquals(64 << 10, Files.size(file));
+    }
+
+    private void assertRecovered(final byte[] data, final byte[] log, final long[] values, final int crash) throws IOException {
+        Path file = Files.createDirectory(this.directory.resolve("crash-" + crash)).resolve("index.db");
+        Files.write(file, data);
+        Files.write(file.resolveSibling("index.db.wal"), log);
+
+        try (MappedLongLongMultimap recovered = MappedLongLongMultimap.open(file, 1_000)) {
+            Assertions.assertArrayEquals(LongStream.range(10, 30).toArray(), recovered.get(1));
+            Assertions.assertArrayEquals(values, recovered.get(2));
+            Assertions.assertArrayEquals(new long[]{30}, recovered.get(3));
+            Assertions.assertEquals(21 + values.length, recovered.size());
+            Assertions.assertEquals(3, recovered.keyCount());
+        }
+    }
+
+    private static byte[] withPage(final byte[] data, final byte[] source, final int page) {
+        byte[] copy = data.clone();
+        System.arraycopy(source, page * PAGE_SIZE, copy, page * PAGE_SIZE, PAGE_SIZE);
+        return copy;
+    }
+}
@@ -0,0 +1,106 @@
+package io.costax.diy.collections;
+
+import io.costax.TimerMarker;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bytes allocated per operation on the lookup path of a {@link ListMultimap}, against the previous access
+ * pattern ({@code getOrDefault(key, getEmptyBackingCollection())}) that created a new collection on every call.
+ */
+public class MultimapAllocationBenchmark {
+
+    private static final int KEYS = 1_000;
+    private static final int OPERATIONS = 1_000_000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Rule
+    public TimerMarker marker = TimerMarker.timer();
+
+    @Test
+    public void getExistingKeys() {
+        final ListMultimap<Integer, Integer> multimap = new ListMultimap<>();
+        final Map<Integer, Collection<Integer>> previous = new HashMap<>();
+        final Integer[] keys = new Integer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+            multimap.put(keys[i], i);
+            previous.computeIfAbsent(keys[i], key -> new ArrayList<>()).add(i);
+        }
+
+        final double before = this.bytesPerOperation(() -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                sum += previous.getOrDefault(keys[i % KEYS], new ArrayList<>()).size();
+            }
+            return sum;
+        });
+        final double after = this.bytesPerOperation(() -> {
+            long sum = 0;
+            for (int i = 0; i < OPERATIONS; i++) {
+                sum += multimap.get(keys[i % KEYS]).size();
+            }
+            return sum;
+        });
+
+        System.out.println("get: " + before + " bytes/op before, " + after + " bytes/op after");
+        Assert.assertTrue(after < 1);
+        Assert.assertTrue(after < before);
+    }
+
+    @Test
+    public void putExistingKeys() {
+        final SetMultimap<Integer, Integer> multimap = new SetMultimap<>();
+        final Map<Integer, Collection<Integer>> previous = new HashMap<>();
+        final Integer[] keys = new Integer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+            multimap.put(keys[i], keys[i]);
+            previous.computeIfAbsent(keys[i], key -> new HashSet<>()).add(keys[i]);
+        }
+
+        // the values are already in the sets, so only the access path can allocate
+        final double before = this.bytesPerOperation(() -> {
+            long added = 1;
+            for (int i = 0; i < OPERATIONS; i++) {
+                final Collection<Integer> values = previous.getOrDefault(keys[i % KEYS], new HashSet<>());
+                added += values.add(keys[i % KEYS]) ? 1 : 0;
+                previous.put(keys[i % KEYS], values);
+            }
+            return added;
+        });
+        final double after = this.bytesPerOperation(() -> {
+            long added = 1;
+            for (int i = 0; i < OPERATIONS; i++) {
+                added += multimap.put(keys[i % KEYS], keys[i % KEYS]) ? 1 : 0;
+            }
+            return added;
+        });
+
+        System.out.println("put: " + before + " bytes/op before, " + after + " bytes/op after");
+        Assert.assertTrue(after < 1);
+        Assert.assertTrue(after < before);
+    }
+
+    private double bytesPerOperation(final LongSupplier benchmark) {
+        final long thread = Thread.currentThread().getId();
+        // warm up, then measure
+        benchmark.getAsLong();
+        final long before = this.threads.getThreadAllocatedBytes(thread);
+        final long result = benchmark.getAsLong();
+        final long allocated = this.threads.getThreadAllocatedBytes(thread) - before;
+        Assert.assertTrue(result > 0);
+        return (double) allocated / OPERATIONS;
+    }
+}
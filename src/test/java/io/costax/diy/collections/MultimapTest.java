@@ -3,8 +3,14 @@ package io.costax.diy.collections;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 class MultimapTest {
 
@@ -113,4 +119,148 @@ class MultimapTest {
         Assertions.assertEquals(List.of(), listMultimap.get("Animal"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getMissingKey() {
+        ListMultimap<String, String> listMultimap = new ListMultimap<>();
+        SetMultimap<String, String> setMultimap = new SetMultimap<>();
+
+        Assertions.assertEquals(List.of(), listMultimap.get("Animal"));
+        Assertions.assertEquals(Set.of(), setMultimap.get("Animal"));
+        Assertions.assertSame(listMultimap.get("Animal"), listMultimap.get("Plant"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> setMultimap.get("Animal").add("Cat"));
+        Assertions.assertFalse(listMultimap.remove("Animal", "Cat"));
+    }
+
+    @Test
+    public void valuesOfAKeyAreReadOnly() {
+        ListMultimap<String, String> listMultimap = new ListMultimap<>();
+        listMultimap.put("Animal", "Cat");
+        Collection<String> returned = listMultimap.putAll("Animal", List.of("Dog"));
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> listMultimap.get("Animal").add("Cow"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> returned.remove("Cat"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> listMultimap.asMap().get("Animal").clear());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<String> iterator = listMultimap.get("Animal").iterator();
+            iterator.next();
+            iterator.remove();
+        });
+        Assertions.assertEquals(2, listMultimap.size());
+        Assertions.assertEquals(2, listMultimap.values().size());
+        Assertions.assertEquals(List.of("Cat", "Dog"), new ArrayList<>(listMultimap.values()));
+
+        // the views are live and keep the equals of their kind
+        listMultimap.put("Animal", "Cow");
+        Assertions.assertEquals(List.of("Cat", "Dog", "Cow"), returned);
+        Assertions.assertSame(listMultimap.get("Animal"), listMultimap.get("Animal"));
+        SetMultimap<String, String> setMultimap = new SetMultimap<>();
+        setMultimap.put("Animal", "Cat");
+        Assertions.assertEquals(Set.of("Cat"), setMultimap.get("Animal"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> setMultimap.get("Animal").add("Dog"));
+    }
+
+    @Test
+    public void putAllNewKey() {
+        ListMultimap<String, String> listMultimap = new ListMultimap<>();
+
+        listMultimap.putAll("Animal", List.of("Cat", "Dog"));
+        Assertions.assertEquals(List.of("Cat", "Dog"), listMultimap.get("Animal"));
+
+        listMultimap.putAll("Plant", List.of());
+        Assertions.assertEquals(List.of(), listMultimap.get("Plant"));
+        Assertions.assertNull(listMultimap.removeAll("Plant"));
+    }
+
+    @Test
+    public void inverseSetMultimap() {
+        SetMultimap<String, String> setMultimap = new SetMultimap<>();
+        setMultimap.put("Animal", "Cat");
+        setMultimap.put("Pet", "Cat");
+        Assertions.assertEquals(0, setMultimap.inverseIndexFootprint());
+
+        SetMultimap<String, String> inverse = setMultimap.inverse();
+        Assertions.assertEquals(Set.of("Animal", "Pet"), inverse.get("Cat"));
+        Assertions.assertSame(setMultimap, inverse.inverse());
+        Assertions.assertTrue(setMultimap.inverseIndexFootprint() > 0);
+
+        setMultimap.putAll("Pet", List.of("Dog", "Cat"));
+        Assertions.assertEquals(Set.of("Pet"), inverse.get("Dog"));
+
+        setMultimap.remove("Animal", "Cat");
+        Assertions.assertEquals(Set.of("Pet"), inverse.get("Cat"));
+
+        setMultimap.removeAll("Pet");
+        Assertions.assertEquals(Set.of(), inverse.get("Cat"));
+        Assertions.assertEquals(Set.of(), inverse.get("Dog"));
+
+        inverse.put("Cat", "Animal");
+        Assertions.assertEquals(Set.of("Cat"), setMultimap.get("Animal"));
+    }
+
+    @Test
+    public void putAllMap() {
+        ListMultimap<String, String> listMultimap = new ListMultimap<>();
+        listMultimap.put("Animal", "Cat");
+
+        listMultimap.putAll(Map.of("Animal", List.of("Dog"), "Plant", List.of("Tree", "Rose"), "Rock", List.of()));
+        Assertions.assertEquals(List.of("Cat", "Dog"), listMultimap.get("Animal"));
+        Assertions.assertEquals(List.of("Tree", "Rose"), listMultimap.get("Plant"));
+        Assertions.assertNull(listMultimap.removeAll("Rock"));
+    }
+
+    @Test
+    public void collectToMultimap() {
+        ListMultimap<Integer, Integer> listMultimap = IntStream.range(0, 100_000).boxed().parallel()
+                .collect(ListMultimap.toListMultimap(i -> i % 10, i -> i));
+        SetMultimap<Integer, Integer> setMultimap = IntStream.range(0, 100_000).boxed().parallel()
+                .collect(SetMultimap.toSetMultimap(i -> i % 10, i -> i % 1_000));
+
+        Assertions.assertEquals(10_000, listMultimap.get(3).size());
+        Assertions.assertEquals(IntStream.range(0, 10_000).map(i -> i * 10 + 3).boxed().collect(Collectors.toList()), listMultimap.get(3));
+        Assertions.assertEquals(100, setMultimap.get(7).size());
+        Assertions.assertTrue(setMultimap.get(7).contains(997));
+    }
+
+    @Test
+    public void views() {
+        ListMultimap<String, String> listMultimap = new ListMultimap<>();
+        listMultimap.put("Animal", "Cat");
+        listMultimap.putAll("Animal", List.of("Dog", "Cat"));
+        listMultimap.put("Plant", "Tree");
+
+        Assertions.assertEquals(4, listMultimap.size());
+        Assertions.assertEquals(2, listMultimap.keyCount());
+        Assertions.assertEquals(Set.of("Animal", "Plant"), listMultimap.keySet());
+        Assertions.assertEquals(4, listMultimap.values().size());
+        Assertions.assertEquals(Map.of("Cat", 2L, "Dog", 1L, "Tree", 1L),
+                listMultimap.values().stream().collect(Collectors.groupingBy(v -> v, Collectors.counting())));
+        Assertions.assertTrue(listMultimap.entries().contains(Map.entry("Plant", "Tree")));
+        Assertions.assertEquals(List.of("Cat", "Dog", "Cat"), listMultimap.asMap().get("Animal"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> listMultimap.values().add("Rose"));
+
+        // the views are live
+        Collection<String> values = listMultimap.values();
+        listMultimap.removeAll("Animal");
+        Assertions.assertEquals(List.of("Tree"), new ArrayList<>(values));
+        Assertions.assertEquals(1, listMultimap.size());
+        listMultimap.remove("Plant", "Tree");
+        Assertions.assertTrue(listMultimap.isEmpty());
+        Assertions.assertTrue(listMultimap.keySet().isEmpty());
+    }
+
+    @Test
+    public void parallelStream() {
+        SetMultimap<Integer, Integer> setMultimap = new SetMultimap<>();
+        for (int i = 0; i < 100_000; i++) {
+            setMultimap.put(i % 1_000, i);
+        }
+        setMultimap.inverse().remove(5, 5);
+
+        Assertions.assertEquals(99_999, setMultimap.size());
+        Assertions.assertEquals(99_999, setMultimap.inverse().size());
+        Assertions.assertEquals(99_999, setMultimap.stream().parallel().count());
+        Assertions.assertEquals(99_999L * 100_000 / 2 - 5,
+                setMultimap.values().parallelStream().mapToLong(Integer::longValue).sum());
+    }
+
+}
@@ -0,0 +1,45 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.EmptyStackException;
+
+class PersistentStackTest {
+
+    @Test
+    public void pushAndPop() {
+        PersistentStack<String> stack = new PersistentStack<>();
+        stack.push("a");
+        stack.push("b");
+
+        Assertions.assertEquals(2, stack.size());
+        Assertions.assertEquals("b", stack.peek());
+        Assertions.assertEquals("b", stack.pop());
+        Assertions.assertEquals("a", stack.pop());
+        Assertions.assertTrue(stack.isEmpty());
+        Assertions.assertThrows(EmptyStackException.class, stack::pop);
+    }
+
+    @Test
+    public void snapshotsAreIndependent() {
+        PersistentStack<Integer> stack = new PersistentStack<>();
+        stack.push(1);
+        stack.push(2);
+
+        PersistentStack<Integer> snapshot = stack.snapshot();
+        stack.pop();
+        stack.push(3);
+        PersistentStack<Integer> clone = stack.clone();
+        clone.push(4);
+
+        Assertions.assertEquals(2, snapshot.size());
+        Assertions.assertEquals(2, snapshot.pop());
+        Assertions.assertEquals(1, snapshot.pop());
+        Assertions.assertEquals(3, stack.pop());
+        Assertions.assertEquals(1, stack.pop());
+        Assertions.assertEquals(4, clone.pop());
+        Assertions.assertEquals(3, clone.pop());
+        Assertions.assertEquals(1, clone.size());
+    }
+}
@@ -0,0 +1,50 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.EmptyStackException;
+
+class SegmentedStackTest {
+
+    @Test
+    public void pushAndPopAcrossSegments() {
+        SegmentedStack<Integer> stack = new SegmentedStack<>();
+        final int count = SegmentedStack.SEGMENT_SIZE * 5 + 7;
+        for (int i = 0; i < count; i++) {
+            stack.push(i);
+        }
+        Assertions.assertEquals(count, stack.size());
+
+        for (int i = count - 1; i >= 0; i--) {
+            Assertions.assertEquals(i, stack.peek());
+            Assertions.assertEquals(i, stack.pop());
+        }
+        Assertions.assertTrue(stack.isEmpty());
+        Assertions.assertThrows(EmptyStackException.class, stack::pop);
+        Assertions.assertThrows(EmptyStackException.class, stack::peek);
+    }
+
+    @Test
+    public void oscillateAroundBoundaryAndClear() {
+        SegmentedStack<String> stack = new SegmentedStack<>();
+        for (int i = 0; i < SegmentedStack.SEGMENT_SIZE; i++) {
+            stack.push("x" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            stack.push("y");
+            stack.push("z");
+            Assertions.assertEquals("z", stack.pop());
+            Assertions.assertEquals("y", stack.pop());
+            Assertions.assertEquals("x" + (SegmentedStack.SEGMENT_SIZE - 1), stack.peek());
+        }
+
+        for (int i = 0; i < SegmentedStack.SEGMENT_SIZE * 3; i++) {
+            stack.push("w");
+        }
+        stack.clear();
+        Assertions.assertTrue(stack.isEmpty());
+        stack.push("a");
+        Assertions.assertEquals("a", stack.pop());
+    }
+}
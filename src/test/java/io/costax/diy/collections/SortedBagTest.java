@@ -0,0 +1,96 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SortedBagTest {
+
+    @Test
+    public void rangeCounts() {
+        SortedBag<String> bag = new SortedBag<>();
+        bag.addOccurrences("apple", 2);
+        bag.addOccurrences("banana", 1);
+        bag.addOccurrences("orange", 3);
+        bag.addOccurrences("strawberry", 12);
+
+        assertEquals(18, bag.size());
+        assertEquals(4, bag.sizeDistinct());
+        assertEquals(3, bag.headCount("orange"));
+        assertEquals(15, bag.tailCount("orange"));
+        assertEquals(4, bag.countInRange("b", "p"));
+        assertEquals(0, bag.countInRange("kiwi", "kiwi"));
+        assertEquals(18, bag.countInRange("a", "z"));
+    }
+
+    @Test
+    public void rankAndSelect() {
+        SortedBag<Integer> bag = new SortedBag<>(Comparator.reverseOrder());
+        bag.addOccurrences(10, 2);
+        bag.addOccurrences(30, 1);
+        bag.addOccurrences(20, 3);
+
+        assertEquals(0, bag.rank(30));
+        assertEquals(1, bag.rank(20));
+        assertEquals(4, bag.rank(10));
+        assertEquals(30, bag.select(0));
+        assertEquals(20, bag.select(3));
+        assertEquals(10, bag.select(5));
+        assertThrows(NoSuchElementException.class, () -> bag.select(6));
+
+        List<Integer> elements = new ArrayList<>();
+        bag.forEach(elements::add);
+        assertEquals(List.of(30, 20, 20, 20, 10, 10), elements);
+    }
+
+    @Test
+    public void removeOccurrences() {
+        SortedBag<String> bag = new SortedBag<>();
+        bag.addOccurrences("apple", 2);
+        bag.addOccurrences("orange", 3);
+
+        bag.removeOccurrence("orange");
+        assertEquals(2, bag.getOccurrences("orange"));
+        bag.removeOccurrences("orange", 5);
+        assertEquals(0, bag.getOccurrences("orange"));
+        assertEquals(2, bag.size());
+        assertEquals(1, bag.sizeDistinct());
+        assertFalse(bag.removeOccurrence("orange"));
+    }
+
+    @Test
+    public void agreesWithATreeMap() {
+        Random random = new Random(3);
+        SortedBag<Integer> bag = new SortedBag<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            int element = random.nextInt(1_000);
+            int occurrences = random.nextInt(5) + 1;
+            if (random.nextBoolean()) {
+                bag.addOccurrences(element, occurrences);
+                expected.merge(element, occurrences, Integer::sum);
+            } else {
+                bag.removeOccurrences(element, occurrences);
+                expected.computeIfPresent(element, (key, count) -> count > occurrences ? count - occurrences : null);
+            }
+        }
+
+        assertEquals(expected.size(), bag.sizeDistinct());
+        for (int i = 0; i < 100; i++) {
+            int from = random.nextInt(1_000);
+            int to = from + random.nextInt(1_000 - from + 1);
+            int count = expected.subMap(from, to).values().stream().mapToInt(Integer::intValue).sum();
+            assertEquals(count, bag.countInRange(from, to));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.EmptyStackException;
+import java.util.List;
+
+class StackTest {
+
+    @Test
+    public void pushAndPop() {
+        Stack<String> stack = new Stack<>();
+        stack.push("a");
+        stack.pushAll("b", "c");
+        stack.pushAll(List.of("d", "e"));
+
+        Assertions.assertEquals(5, stack.size());
+        Assertions.assertEquals("e", stack.peek());
+        Assertions.assertEquals(List.of("e", "d", "c"), stack.popN(3));
+        Assertions.assertEquals("b", stack.pop());
+        Assertions.assertEquals("a", stack.pop());
+        Assertions.assertTrue(stack.isEmpty());
+        Assertions.assertThrows(EmptyStackException.class, stack::pop);
+        Assertions.assertThrows(EmptyStackException.class, () -> stack.popN(1));
+    }
+
+    @Test
+    public void growAndTrim() {
+        Stack<Integer> stack = new Stack<>(1, 3.0f);
+        for (int i = 0; i < 1_000; i++) {
+            stack.push(i);
+        }
+        stack.popN(998);
+        stack.trimToSize();
+        Assertions.assertEquals(2, stack.capacity());
+        Assertions.assertEquals(1, stack.peek());
+
+        stack.clear();
+        Assertions.assertTrue(stack.isEmpty());
+        stack.push(7);
+        Assertions.assertEquals(7, stack.pop());
+    }
+}
@@ -0,0 +1,81 @@
+package io.costax.diy.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WindowedBagTest {
+
+    @Test
+    public void countsTheOccurrencesInTheWindow() {
+        MutableClock clock = new MutableClock();
+        WindowedBag<String> requests = new WindowedBag<>(Duration.ofSeconds(10), 10, clock);
+
+        requests.addOccurrence("client-a");
+        requests.addOccurrences("client-b", 3);
+        clock.advance(Duration.ofSeconds(4));
+        requests.addOccurrences("client-a", 2);
+        assertEquals(3, requests.getOccurrences("client-a"));
+        assertEquals(6, requests.size());
+        assertEquals(2, requests.topOccurrences(5).size());
+
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(2, requests.getOccurrences("client-a"));
+        assertEquals(0, requests.getOccurrences("client-b"));
+        assertEquals(2, requests.size());
+        assertEquals(1, requests.sizeDistinct());
+
+        clock.advance(Duration.ofSeconds(4));
+        assertEquals(0, requests.getOccurrences("client-a"));
+        assertEquals(0, requests.size());
+    }
+
+    @Test
+    public void theWholeWindowExpires() {
+        MutableClock clock = new MutableClock();
+        WindowedBag<String> requests = new WindowedBag<>(Duration.ofMinutes(1), 6, clock);
+
+        requests.addOccurrences("client-a", 100);
+        clock.advance(Duration.ofHours(1));
+        assertEquals(0, requests.getOccurrences("client-a"));
+
+        requests.addOccurrence("client-a");
+        assertEquals(1, requests.getOccurrences("client-a"));
+    }
+
+    @Test
+    public void invalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new WindowedBag<>(Duration.ofSeconds(1), 0));
+        assertThrows(IllegalArgumentException.class, () -> new WindowedBag<>(Duration.ofMillis(5), 10));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2020-04-01T10:00:00Z");
+
+        void advance(final Duration duration) {
+            this.instant = this.instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return this.instant;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.costax.item17.minimizemutability;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComplexAccumulatorTest {
+
+    @Test
+    @DisplayName("Assert that the accumulator computes the same values as the immutable ComplexNumber")
+    void sameArithmeticAsComplexNumber() {
+        final ComplexNumber a = ComplexNumber.valueOf(1.5, -2.0);
+        final ComplexNumber b = ComplexNumber.valueOf(-0.5, 3.0);
+
+        assertEquals(a.plus(b), new ComplexAccumulator(a).plus(b).toComplexNumber());
+        assertEquals(a.minus(b), new ComplexAccumulator(a).minus(b).toComplexNumber());
+        assertEquals(a.times(b), new ComplexAccumulator(a).times(b).toComplexNumber());
+        assertEquals(a.dividedBy(b), new ComplexAccumulator(a).dividedBy(b).toComplexNumber());
+        assertEquals(ComplexNumber.valueOf(3.0, 4.0), new ComplexAccumulator(a).conjugate().scale(2).toComplexNumber());
+    }
+
+    @Test
+    @DisplayName("Assert that a sum of products is accumulated in place")
+    void sumOfProducts() {
+        final ComplexAccumulator sum = new ComplexAccumulator();
+        for (int k = 0; k < 4; k++) {
+            sum.plus(ComplexNumber.I.times(ComplexNumber.I));
+        }
+
+        assertSame(ComplexNumber.ZERO, sum.plus(4, 0).toComplexNumber());
+    }
+}
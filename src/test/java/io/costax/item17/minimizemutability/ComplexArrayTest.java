@@ -0,0 +1,57 @@
+package io.costax.item17.minimizemutability;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComplexArrayTest {
+
+    private static final ComplexNumber A = ComplexNumber.valueOf(1.0, 2.0);
+    private static final ComplexNumber B = ComplexNumber.valueOf(-3.0, 0.5);
+
+    @Test
+    @DisplayName("Assert that the bulk operations only update the given range")
+    void rangeOperations() {
+        final ComplexArray array = ComplexArray.of(A, A, A);
+        final ComplexArray other = ComplexArray.of(B, B, B);
+
+        array.add(other, 0, 1);
+        array.multiply(other, 1, 2);
+        array.conjugate(2, 3);
+
+        assertEquals(A.plus(B), array.get(0));
+        assertEquals(A.times(B), array.get(1));
+        assertEquals(ComplexNumber.valueOf(1.0, -2.0), array.get(2));
+
+        array.scale(2.0, 0, 3);
+        array.multiply(ComplexNumber.I, 2, 3);
+        assertEquals(ComplexNumber.valueOf(4.0, 2.0), array.get(2));
+        assertEquals(3, array.length());
+    }
+
+    @Test
+    @DisplayName("Assert that an array can be multiplied by itself")
+    void multiplyBySelf() {
+        final ComplexArray array = ComplexArray.of(ComplexNumber.valueOf(1.0, 1.0), A);
+
+        array.multiply(array, 0, 2);
+
+        assertEquals(ComplexNumber.valueOf(0.0, 2.0), array.get(0));
+        assertEquals(A.times(A), array.get(1));
+    }
+
+    @Test
+    @DisplayName("Assert that the ranges and the indexes are checked")
+    void bounds() {
+        final ComplexArray array = new ComplexArray(2);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> array.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.scale(2.0, 1, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.add(new ComplexArray(1), 0, 2));
+
+        final ComplexAccumulator accumulator = new ComplexAccumulator();
+        array.set(1, B);
+        assertEquals(B, array.get(1, accumulator).toComplexNumber());
+    }
+}